@@ -1,9 +1,10 @@
 --
 -- FUNCTION: oracp_list_dir
--- PURPOSE: List files in a directory.
+-- PURPOSE: List files in a directory. An optional LIKE pattern with \
+--    as the escape character selects the files by name.
 -- USAGE:
 --    select column_value as file_name
---    from table(sys.oracp_list_dir('app_dump_dir'));
+--    from table(sys.oracp_list_dir('app_dump_dir', '%.dmp'));
 -- NOTES: This function requires access to x$krbmsft and should
 --    be run as SYS.
 --
@@ -12,7 +13,8 @@ CREATE OR REPLACE TYPE oracp_file_array AS TABLE OF VARCHAR2(100);
 /
 
 CREATE OR REPLACE FUNCTION oracp_list_dir (
-        lp_directory IN VARCHAR2 DEFAULT NULL)
+        lp_directory IN VARCHAR2 DEFAULT NULL,
+        lp_pattern IN VARCHAR2 DEFAULT NULL)
         RETURN oracp_file_array PIPELINED
     AS
     lv_pattern VARCHAR2(1024);
@@ -28,10 +30,14 @@ BEGIN
     sys.dbms_backup_restore.searchfiles(lv_pattern, lv_ns);
 
     FOR file_row IN (
-        SELECT fname_krbmsft AS file_name
-        FROM x$krbmsft )
+        SELECT file_name
+        FROM (
+            SELECT REPLACE(fname_krbmsft, lv_pattern, '') AS file_name
+            FROM x$krbmsft )
+        WHERE lp_pattern IS NULL
+            OR file_name LIKE lp_pattern ESCAPE '\' )
     LOOP
-        lv_file_name := REPLACE(file_row.file_name, lv_pattern, '');
+        lv_file_name := file_row.file_name;
         PIPE ROW(lv_file_name);
     END LOOP;
 END;
@@ -39,3 +45,93 @@ END;
 
 GRANT EXECUTE ON oracp_list_dir TO PUBLIC;
 /
+
+--
+-- FUNCTION: oracp_file_mtime
+-- PURPOSE: Return the modification time of a file in milliseconds since
+--    the epoch. This is optional and requires the Java VM in the database.
+--    If it is not installed oracp_list_dir_attr returns a NULL mtime.
+--
+
+CREATE OR REPLACE AND COMPILE JAVA SOURCE NAMED "OracpFileMtime" AS
+public class OracpFileMtime
+{
+    public static long lastModified(String path)
+    {
+        return new java.io.File(path).lastModified();
+    }
+};
+/
+
+CREATE OR REPLACE FUNCTION oracp_file_mtime (
+        lp_path IN VARCHAR2)
+        RETURN NUMBER
+    AS LANGUAGE JAVA
+    NAME 'OracpFileMtime.lastModified(java.lang.String) return long';
+/
+
+--
+-- FUNCTION: oracp_list_dir_attr
+-- PURPOSE: List files in a directory with their size and modification time.
+--    The name pattern is passed to oracp_list_dir so that FGETATTR is only
+--    called for matching files. The optional time range is in milliseconds
+--    since the epoch and includes the lower bound.
+-- USAGE:
+--    select file_name, file_size, mtime
+--    from table(sys.oracp_list_dir_attr('app_dump_dir', '%.dmp', 1475280000000, NULL));
+-- NOTES: The size is read with UTL_FILE.FGETATTR. The mtime is NULL if
+--    the oracp_file_mtime function is not available, and then no files
+--    match a time range.
+--
+
+CREATE OR REPLACE TYPE oracp_file_attr AS OBJECT (
+    file_name VARCHAR2(1024),
+    file_size NUMBER,
+    mtime NUMBER);
+/
+
+CREATE OR REPLACE TYPE oracp_file_attr_array AS TABLE OF oracp_file_attr;
+/
+
+CREATE OR REPLACE FUNCTION oracp_list_dir_attr (
+        lp_directory IN VARCHAR2,
+        lp_pattern IN VARCHAR2 DEFAULT NULL,
+        lp_min_mtime IN NUMBER DEFAULT NULL,
+        lp_max_mtime IN NUMBER DEFAULT NULL)
+        RETURN oracp_file_attr_array PIPELINED
+    AS
+    lv_path VARCHAR2(1024);
+    lv_exists BOOLEAN;
+    lv_length NUMBER;
+    lv_blocksize NUMBER;
+    lv_mtime NUMBER;
+BEGIN
+    SELECT directory_path
+    INTO lv_path
+    FROM dba_directories
+    WHERE directory_name = upper(lp_directory);
+
+    FOR file_row IN (
+        SELECT column_value AS file_name
+        FROM table(oracp_list_dir(lp_directory, lp_pattern)) )
+    LOOP
+        UTL_FILE.FGETATTR(upper(lp_directory), file_row.file_name, lv_exists, lv_length, lv_blocksize);
+
+        BEGIN
+            EXECUTE IMMEDIATE 'BEGIN :m := oracp_file_mtime(:p); END;'
+                USING OUT lv_mtime, IN lv_path || '/' || file_row.file_name;
+        EXCEPTION WHEN OTHERS THEN
+            lv_mtime := NULL;
+        END;
+
+        IF (lv_exists
+            AND (lp_min_mtime IS NULL OR lv_mtime >= lp_min_mtime)
+            AND (lp_max_mtime IS NULL OR lv_mtime < lp_max_mtime)) THEN
+            PIPE ROW(oracp_file_attr(file_row.file_name, lv_length, lv_mtime));
+        END IF;
+    END LOOP;
+END;
+/
+
+GRANT EXECUTE ON oracp_list_dir_attr TO PUBLIC;
+/
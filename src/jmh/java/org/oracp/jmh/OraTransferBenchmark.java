@@ -0,0 +1,188 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.jmh;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.oracp.sql.OraFile;
+import org.oracp.test.OraFakeBackend;
+
+import oracle.jdbc.OracleConnection;
+
+/**
+ * Throughput of the GET and PUT paths of OraFile against
+ * {@link OraFakeBackend}. Each operation moves FILE_SIZE bytes so the
+ * transfer rate is FILE_SIZE divided by the average time. Run with
+ * <code>-prof gc</code> to see the allocation per operation.
+ * @author Chad Juliano
+ */
+@SuppressWarnings("javadoc")
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OraTransferBenchmark
+{
+    private static final int    FILE_SIZE = 16 * 1024 * 1024;
+    private static final String DB_DIR    = "APP_DUMP_DIR";
+
+    /** Simulated round trip time of each call. */
+    @Param({ "0", "500" })
+    public long                 latencyUs;
+
+    /** Simulated bandwidth in MB/s or 0 for no limit. */
+    @Param({ "0", "100" })
+    public long                 bandwidthMb;
+
+    /** GET_RAW chunks per call for get and 32 KB slices per piece for put. */
+    @Param({ "1", "16" })
+    public int                  chunks;
+
+    /** Buffers used by the overlapped I/O or 0 for a single thread. */
+    @Param({ "0", "8" })
+    public int                  pipeline;
+
+    private OraFakeBackend      _readBackend;
+    private OraFakeBackend      _writeBackend;
+    private OracleConnection    _readDbc;
+    private OracleConnection    _writeDbc;
+    private ByteArrayInputStream _source;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+        this._readBackend = newBackend(FILE_SIZE);
+        this._readDbc = this._readBackend.getConnection();
+
+        this._writeBackend = newBackend(0);
+        this._writeBackend.setExists(false);
+        this._writeDbc = this._writeBackend.getConnection();
+
+        byte[] _data = new byte[FILE_SIZE];
+        OraFakeBackend.fillPattern(0, _data, 0, _data.length);
+        this._source = new ByteArrayInputStream(_data);
+    }
+
+    private OraFakeBackend newBackend(long _length)
+    {
+        OraFakeBackend _backend = new OraFakeBackend(_length);
+        _backend.setLatency(this.latencyUs);
+        _backend.setBandwidth(this.bandwidthMb * 1024 * 1024);
+        return _backend;
+    }
+
+    /**
+     * OraFile.getContents() through OraFile.transfer().
+     */
+    @Benchmark
+    public long get(Blackhole _bh)
+            throws Exception
+    {
+        OraFile _oraFile = new OraFile(this._readDbc, DB_DIR, "bench.dmp");
+        _oraFile.setChunksPerCall(this.chunks);
+        _oraFile.setPipelineDepth(this.pipeline);
+
+        BlackholeOutputStream _os = new BlackholeOutputStream(_bh);
+        _oraFile.getContents(_os, null);
+        return _os._numBytes;
+    }
+
+    /**
+     * The read loop of OraInputStream without the transfer pipeline.
+     */
+    @Benchmark
+    public long read(Blackhole _bh)
+            throws Exception
+    {
+        OraFile _oraFile = new OraFile(this._readDbc, DB_DIR, "bench.dmp");
+        _oraFile.setChunksPerCall(this.chunks);
+
+        byte[] _buf = new byte[32767];
+        long _numBytes = 0;
+        try(InputStream _is = _oraFile.openInputStream())
+        {
+            int _numRead;
+            while((_numRead = _is.read(_buf)) > 0)
+            {
+                _bh.consume(_buf);
+                _numBytes += _numRead;
+            }
+        }
+        return _numBytes;
+    }
+
+    /**
+     * OraFile.putContents() through OraFile.transfer() and OraOutputStream.
+     */
+    @Benchmark
+    public long put()
+            throws Exception
+    {
+        OraFile _oraFile = new OraFile(this._writeDbc, DB_DIR, "bench.dmp");
+        _oraFile.setPieceSize(this.chunks * 32767);
+        _oraFile.setPipelineDepth(this.pipeline);
+
+        this._source.reset();
+        _oraFile.putContents(this._source, null);
+        return this._writeBackend.getWriteLength();
+    }
+
+    /**
+     * Sends the data to the blackhole so that the writes are not optimized
+     * away.
+     */
+    private static class BlackholeOutputStream extends OutputStream
+    {
+        private final Blackhole _bh;
+        private long            _numBytes = 0;
+
+        private BlackholeOutputStream(Blackhole _bh)
+        {
+            this._bh = _bh;
+        }
+
+        @Override
+        public void write(int _byte)
+                throws IOException
+        {
+            this._bh.consume(_byte);
+            this._numBytes++;
+        }
+
+        @Override
+        public void write(byte[] _buf, int _offset, int _length)
+                throws IOException
+        {
+            this._bh.consume(_buf);
+            this._numBytes += _length;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.oracp.sql.OraFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.OracleConnection;
+
+/**
+ * Transfers a set of files with a fixed number of workers. Each worker opens
+ * one connection and uses it for all the files it takes from the queue so
+ * that the connection setup is paid once per worker instead of once per
+ * file. Progress is reported for the batch as a whole.
+ * @author Chad Juliano
+ */
+class OcpBatch
+{
+    private static final Logger LOG               = LoggerFactory.getLogger(OcpBatch.class);
+    private static final long   PROGRESS_DELAY_MS = 1000;
+
+    private final DataSource    _ds;
+    private final int           _jobs;
+
+    private final AtomicLong    _numTotal         = new AtomicLong();
+    private final AtomicInteger _numFailed        = new AtomicInteger();
+    private long                _lastTime         = 0;
+
+    /**
+     * Transfer of a single file in the batch.
+     */
+    interface FileTask
+    {
+        /**
+         * @param _dbc Connection owned by the worker.
+         * @param _fileName File to transfer.
+         * @param _progress Progress of this file.
+         * @throws Exception
+         */
+        void transfer(OracleConnection _dbc, String _fileName, OraFile.Progress _progress)
+                throws Exception;
+    }
+
+    /**
+     * Constructor
+     * @param _ds Source of the worker connections.
+     * @param _jobs Number of files transferred at the same time.
+     */
+    OcpBatch(DataSource _ds, int _jobs)
+    {
+        this._ds = _ds;
+        this._jobs = _jobs;
+    }
+
+    /**
+     * Transfer all the files. A failure of one file is logged and does not
+     * stop the others.
+     * @param _files File names with their sizes in bytes.
+     * @param _task Called for each file.
+     * @param _progress Optional callback for the progress of the batch.
+     * @return The number of files that failed.
+     * @throws Exception
+     */
+    int run(Map<String, Long> _files, FileTask _task, OraFile.Progress _progress)
+            throws Exception
+    {
+        final long _batchSize = _files.values().stream().mapToLong(Long::longValue).sum();
+        final Queue<String> _queue = new ConcurrentLinkedQueue<>(_files.keySet());
+        final int _numWorkers = Math.min(this._jobs, _files.size());
+        LOG.debug("Batch: files={}, jobs={}, bytes={}", _files.size(), _numWorkers, _batchSize);
+
+        this._numTotal.set(0);
+        this._numFailed.set(0);
+
+        ExecutorService _pool = Executors.newFixedThreadPool(Math.max(_numWorkers, 1));
+        try
+        {
+            List<Future<Void>> _futures = new ArrayList<>();
+            for(int _idx = 0; _idx < _numWorkers; _idx++)
+            {
+                _futures.add(_pool.submit(() ->
+                {
+                    worker(_queue, _task, _batchSize, _progress);
+                    return null;
+                }));
+            }
+
+            for(Future<Void> _future : _futures)
+            {
+                _future.get();
+            }
+        }
+        finally
+        {
+            _pool.shutdownNow();
+        }
+
+        // files that were not taken because every worker failed to connect.
+        for(String _fileName : _queue)
+        {
+            this._numFailed.incrementAndGet();
+            LOG.error("Not transferred: {}", _fileName);
+        }
+
+        updateProgress(_progress, _batchSize, true);
+        return this._numFailed.get();
+    }
+
+    /**
+     * Take files from the queue until it is empty.
+     */
+    private void worker(Queue<String> _queue, FileTask _task, long _batchSize, OraFile.Progress _progress)
+    {
+        try(OracleConnection _dbc = (OracleConnection)this._ds.getConnection())
+        {
+            String _fileName;
+            while((_fileName = _queue.poll()) != null)
+            {
+                // the file progress is absolute so keep the last value to add the difference.
+                final long[] _fileBytes = new long[1];
+                try
+                {
+                    _task.transfer(_dbc, _fileName, (_partBytes, _totalBytes) ->
+                    {
+                        this._numTotal.addAndGet(_partBytes - _fileBytes[0]);
+                        _fileBytes[0] = _partBytes;
+                        updateProgress(_progress, _batchSize, false);
+                    });
+                    LOG.info("Done: {}", _fileName);
+                }
+                catch(Exception _ex)
+                {
+                    this._numFailed.incrementAndGet();
+                    LOG.error("Failed: {}: {}", _fileName, _ex.getMessage());
+                    LOG.debug("Exception", _ex);
+                }
+            }
+        }
+        catch(Exception _ex)
+        {
+            // the files are left in the queue for the other workers.
+            LOG.error("Worker failed: {}", _ex.getMessage());
+        }
+    }
+
+    /**
+     * Report progress from the workers at most once every PROGRESS_DELAY_MS.
+     */
+    private synchronized void updateProgress(OraFile.Progress _progress, long _batchSize, boolean _force)
+    {
+        if(_progress == null)
+        {
+            return;
+        }
+
+        long _timeDiff = System.currentTimeMillis() - this._lastTime;
+        if(_timeDiff > PROGRESS_DELAY_MS || _force)
+        {
+            this._lastTime = System.currentTimeMillis();
+            _progress.update(this._numTotal.get(), _batchSize);
+        }
+    }
+}
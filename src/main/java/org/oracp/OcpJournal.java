@@ -0,0 +1,231 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small sidecar file that records how much of a transfer has been committed
+ * so that an interrupted transfer can be resumed. The journal is kept next to
+ * the local file as <i>FILE.oracp-journal</i> and is removed when the transfer
+ * completes.
+ * <p>
+ * For a GET the journal also holds a CRC32 of the local bytes written so far.
+ * It is checked against the local file before the transfer is resumed.
+ * @author Chad Juliano
+ */
+class OcpJournal
+{
+    private static final Logger LOG          = LoggerFactory.getLogger(OcpJournal.class);
+    static final String         SUFFIX       = ".oracp-journal";
+
+    private static final String KEY_SOURCE   = "source";
+    private static final String KEY_LENGTH   = "length";
+    private static final String KEY_MODIFIED = "modified";
+    private static final String KEY_OFFSET   = "offset";
+    private static final String KEY_CRC32    = "crc32";
+
+    private final File          _journalFile;
+    private final String        _source;
+    private final long          _length;
+    private final long          _modified;
+
+    private final CRC32         _crc         = new CRC32();
+    private boolean             _checksum    = false;
+    private long                _offset      = 0;
+
+    /**
+     * Constructor
+     * @param _localFile The local side of the transfer.
+     * @param _source Identifies the remote side of the transfer.
+     * @param _length Length of the file being transferred.
+     * @param _modified Modification time of the source or 0 if unknown.
+     */
+    OcpJournal(File _localFile, String _source, long _length, long _modified)
+    {
+        this._journalFile = new File(_localFile.getPath() + SUFFIX);
+        this._source = _source;
+        this._length = _length;
+        this._modified = _modified;
+    }
+
+    /**
+     * Load the journal from a previous run.
+     * @return true if a journal exists for the same transfer.
+     * @throws IOException
+     */
+    boolean load()
+            throws IOException
+    {
+        if(!this._journalFile.isFile())
+        {
+            return false;
+        }
+
+        Properties _props = new Properties();
+        try(InputStream _is = new FileInputStream(this._journalFile))
+        {
+            _props.load(_is);
+        }
+
+        if(!this._source.equals(_props.getProperty(KEY_SOURCE))
+                || this._length != Long.parseLong(_props.getProperty(KEY_LENGTH, "-1"))
+                || this._modified != Long.parseLong(_props.getProperty(KEY_MODIFIED, "-1")))
+        {
+            LOG.warn("Ignoring journal for a different transfer: {}", this._journalFile);
+            return false;
+        }
+
+        this._offset = Long.parseLong(_props.getProperty(KEY_OFFSET, "0"));
+        LOG.debug("Loaded journal: {} (offset={})", this._journalFile, this._offset);
+        return true;
+    }
+
+    /**
+     * The number of bytes committed by the last run.
+     * @return
+     */
+    long getOffset()
+    {
+        return this._offset;
+    }
+
+    /**
+     * Compare the checksum in the journal with the start of a local file.
+     * After a match the checksum continues from the end of the verified bytes.
+     * @param _localFile
+     * @return true if the local file matches the journal.
+     * @throws IOException
+     */
+    boolean verifyPrefix(File _localFile)
+            throws IOException
+    {
+        if(_localFile.length() < this._offset)
+        {
+            LOG.warn("Local file is shorter than the journal offset: {}", _localFile);
+            return false;
+        }
+
+        Properties _props = new Properties();
+        try(InputStream _is = new FileInputStream(this._journalFile))
+        {
+            _props.load(_is);
+        }
+        String _expected = _props.getProperty(KEY_CRC32);
+
+        this._crc.reset();
+        byte[] _buf = new byte[64 * 1024];
+        try(InputStream _is = new FileInputStream(_localFile))
+        {
+            long _remaining = this._offset;
+            while(_remaining > 0)
+            {
+                int _numRead = _is.read(_buf, 0, (int)Math.min(_buf.length, _remaining));
+                if(_numRead <= 0)
+                {
+                    return false;
+                }
+                this._crc.update(_buf, 0, _numRead);
+                _remaining -= _numRead;
+            }
+        }
+
+        if(!Long.toHexString(this._crc.getValue()).equals(_expected))
+        {
+            LOG.warn("Local file does not match the journal checksum: {}", _localFile);
+            this._crc.reset();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Start over from the beginning of the file.
+     */
+    void reset()
+    {
+        this._offset = 0;
+        this._crc.reset();
+    }
+
+    /**
+     * Wrap the local output of a GET so that a checksum of the written bytes
+     * is kept in the journal.
+     * @param _os
+     * @return
+     */
+    OutputStream wrap(OutputStream _os)
+    {
+        this._checksum = true;
+        return new CheckedOutputStream(_os, this._crc);
+    }
+
+    /**
+     * Record the committed offset. Errors are logged because a missing journal
+     * should not stop the transfer.
+     * @param _offset Number of bytes committed at the destination.
+     */
+    void save(long _offset)
+    {
+        this._offset = _offset;
+
+        Properties _props = new Properties();
+        _props.setProperty(KEY_SOURCE, this._source);
+        _props.setProperty(KEY_LENGTH, Long.toString(this._length));
+        _props.setProperty(KEY_MODIFIED, Long.toString(this._modified));
+        _props.setProperty(KEY_OFFSET, Long.toString(_offset));
+        if(this._checksum)
+        {
+            _props.setProperty(KEY_CRC32, Long.toHexString(this._crc.getValue()));
+        }
+
+        // write a new copy and replace the old one so a crash can't leave a partial journal.
+        File _tempFile = new File(this._journalFile.getPath() + ".tmp");
+        try
+        {
+            try(OutputStream _os = new FileOutputStream(_tempFile))
+            {
+                _props.store(_os, "ORACP transfer journal");
+            }
+            Files.move(_tempFile.toPath(), this._journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException _ex)
+        {
+            LOG.warn("Could not save journal {}: {}", this._journalFile, _ex.getMessage());
+        }
+    }
+
+    /**
+     * Remove the journal after the transfer is complete.
+     */
+    void delete()
+    {
+        if(this._journalFile.exists() && !this._journalFile.delete())
+        {
+            LOG.warn("Could not delete journal: {}", this._journalFile);
+        }
+    }
+}
@@ -11,17 +11,56 @@
 
 package org.oracp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
+import org.oracp.sql.OraAutoTuner;
+import org.oracp.sql.OraConnectionPool;
+import org.oracp.sql.OraDeltaTransfer;
 import org.oracp.sql.OraFile;
+import org.oracp.sql.OraFileFilter;
+import org.oracp.sql.OraFileInfo;
+import org.oracp.sql.OraFileStat;
+import org.oracp.sql.OraMetrics;
+import org.oracp.sql.OraParallelTransfer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.taskdriver.TaskDefinition;
@@ -44,20 +83,50 @@ import oracle.jdbc.pool.OracleDataSource;
 public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
 {
     private static final Logger LOG          = LoggerFactory.getLogger(OcpTaskDriver.class);
+    private static final String WARMUP_FILE  = ".oracp-warmup";
+    private static final int    TUNE_STREAMS = 16;
+    private static final String STDIO        = "-";
+    private static final int    STDIO_BUF    = 1024 * 1024;
+    private static final long   POLL_MS      = 1000;
     private final DecimalFormat _dFormat     = new DecimalFormat("0.00");
     private String              _optionalOpt = null;
     private String              _requiredOpt = null;
     private boolean             _force       = false;
+    private boolean             _compress    = false;
+    private boolean             _resume      = false;
+    private boolean             _delta       = false;
+    private boolean             _autoTune    = false;
+    private boolean             _fcopy       = false;
+    private File                _reportFile  = null;
+    private String              _putName     = null;
+    private OraFileFilter       _listFilter  = new OraFileFilter();
+    private int                 _parallel    = 1;
+    private int                 _jobs        = 4;
+    private int                 _batchJobs   = 1;
+    private int                 _stmtCache   = 0;
+    private int                 _chunks      = 0;
+    private OraFile.Engine      _engine      = OraFile.Engine.UTL_FILE;
+    private int                 _pieceKb     = 0;
+    private int                 _pipeline    = -1;
+    private int                 _poolMin     = 1;
+    private int                 _poolMax     = 0;
+    private int                 _sdu         = 0;
     private OracleDataSource    _ods         = null;
+    private OraConnectionPool   _pool        = null;
     private String              _sourceDbDir = null;
     private long                _lastTimeMs;
     private long                _lastBytes;
 
     enum OcpTaskEnum
     {
+        CP,
         GET,
         LIST,
-        PUT;
+        MV,
+        PUT,
+        RM,
+        STAT,
+        SYNC;
     };
 
     /**
@@ -69,14 +138,48 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
         addOption("user", "DB username", "u", true);
         addOption("passwd", "DB password", "p", true);
         addOption("db-dir", "DB directory object", "s", true);
-        addOption("force", "Force overwrite of destination.", "f", false);
+        addOption("force", "Force overwrite of destination or rm of a pattern.", "f", false);
+        addOption("compress", "Compress data on the network with UTL_COMPRESS.", "z", false);
+        addOption("resume", "Resume an interrupted get or put from its journal.", null, false);
+        addOption("delta", "Send only the blocks that differ from the existing destination.", null, false);
+        addOption("parallel", "Number of parallel connections used by get and put.", null, true);
+        addOption("auto-tune", "Adjust parallel connections and round trip size during get and put.", null, false);
+        addOption("jobs", "Number of files transferred at once when a pattern is given (default 4).", null, true);
+        addOption("chunks", "Number of 32 KB chunks fetched in each round trip by get (default 16).", null, true);
+        addOption("engine", "Read engine used by get: utl_file or bfile (default utl_file).", null, true);
+        addOption("piece-size", "KB sent in each round trip by put (default 1024).", null, true);
+        addOption("pipeline", "Buffers used to overlap network and disk I/O (default 8, 0 disables).", null, true);
+        addOption("stmt-cache", "Size of the JDBC implicit statement cache (default off).", null, true);
+        addOption("pool-min", "Connections opened and warmed before the task starts (default 1).", null, true);
+        addOption("pool-max", "Maximum number of open connections (default no limit).", null, true);
+        addOption("report", "Write a JSON report of the database calls to this file.", null, true);
+        addOption("match", "List only files with names matching a glob pattern.", null, true);
+        addOption("since", "List only files modified at or after a date (yyyy-MM-dd[THH:mm[:ss]]).", null, true);
+        addOption("until", "List only files modified before a date (yyyy-MM-dd[THH:mm[:ss]]).", null, true);
+        addOption("sdu", "Session data unit size in bytes requested from the listener.", null, true);
+        addOption("fcopy", "Copy with UTL_FILE.FCOPY, which is line based and only suited to text files.", null,
+                false);
+        addOption("name", "Name of the remote file written by put when the source is - (stdin).", null, true);
 
-        addTask(OcpTaskEnum.GET, "Transfer a file from the database to a local directory.")
+        addTask(OcpTaskEnum.CP, "Copy a file or pattern to another directory object inside the database.")
+            .addArg("REMOTE-FILE")
+            .addArg("DEST-DIR[/NAME]");
+        addTask(OcpTaskEnum.GET, "Transfer a file or pattern from the database to a local directory or - (stdout).")
             .addArg("REMOTE-FILE")
             .addArg("LOCAL-DIR");
         addTask(OcpTaskEnum.LIST, "List the contents of an oracle Directory Object.");
-        addTask(OcpTaskEnum.PUT, "Transfer a local file to a database directory.")
+        addTask(OcpTaskEnum.MV, "Move a file or pattern to another directory object with UTL_FILE.FRENAME.")
+            .addArg("REMOTE-FILE")
+            .addArg("DEST-DIR[/NAME]");
+        addTask(OcpTaskEnum.PUT, "Transfer a local file, pattern or - (stdin) to a database directory.")
             .addArg("LOCAL-FILE");
+        addTask(OcpTaskEnum.RM, "Remove a file or pattern from the directory object.")
+            .addArg("REMOTE-FILE");
+        addTask(OcpTaskEnum.STAT, "Show the size of files given as NAME,NAME,... or @LIST-FILE.")
+            .addArg("REMOTE-FILES");
+        addTask(OcpTaskEnum.SYNC, "Copy new or changed files in the direction get or put.")
+            .addArg("get|put")
+            .addArg("LOCAL-DIR");
     }
 
     @Override
@@ -107,14 +210,201 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
             this._force = true;
         }
 
+        if(_cmdArgs.hasOption("z"))
+        {
+            this._compress = true;
+        }
+
+        if(_cmdArgs.hasOption("parallel"))
+        {
+            this._parallel = Integer.parseInt(_cmdArgs.getRequiredOption("parallel"));
+            if(this._parallel < 1)
+            {
+                throw new IllegalArgumentException("Parallel must be at least 1: " + this._parallel);
+            }
+        }
+
+        if(_cmdArgs.hasOption("auto-tune"))
+        {
+            this._autoTune = true;
+        }
+
+        if(_cmdArgs.hasOption("fcopy"))
+        {
+            this._fcopy = true;
+        }
+
+        if(_cmdArgs.hasOption("name"))
+        {
+            this._putName = _cmdArgs.getRequiredOption("name");
+        }
+
+        if(_cmdArgs.hasOption("report"))
+        {
+            this._reportFile = new File(_cmdArgs.getRequiredOption("report"));
+        }
+
+        if(_cmdArgs.hasOption("match"))
+        {
+            this._listFilter.setNamePattern(_cmdArgs.getRequiredOption("match"));
+        }
+
+        if(_cmdArgs.hasOption("since"))
+        {
+            this._listFilter.setModifiedAfter(parseTime(_cmdArgs.getRequiredOption("since")));
+        }
+
+        if(_cmdArgs.hasOption("until"))
+        {
+            this._listFilter.setModifiedBefore(parseTime(_cmdArgs.getRequiredOption("until")));
+        }
+
+        if(_cmdArgs.hasOption("jobs"))
+        {
+            this._jobs = Integer.parseInt(_cmdArgs.getRequiredOption("jobs"));
+            if(this._jobs < 1)
+            {
+                throw new IllegalArgumentException("Jobs must be at least 1: " + this._jobs);
+            }
+        }
+
+        if(_cmdArgs.hasOption("resume"))
+        {
+            this._resume = true;
+            if(this._parallel > 1 || this._autoTune)
+            {
+                throw new IllegalArgumentException("Resume can't be used with parallel transfers.");
+            }
+        }
+
+        if(_cmdArgs.hasOption("delta"))
+        {
+            this._delta = true;
+            if(this._parallel > 1 || this._autoTune || this._resume)
+            {
+                throw new IllegalArgumentException("Delta can't be used with parallel or resumed transfers.");
+            }
+        }
+
+        if(_cmdArgs.hasOption("chunks"))
+        {
+            this._chunks = Integer.parseInt(_cmdArgs.getRequiredOption("chunks"));
+            if(this._chunks < 1)
+            {
+                throw new IllegalArgumentException("Chunks must be at least 1: " + this._chunks);
+            }
+        }
+
+        if(_cmdArgs.hasOption("engine"))
+        {
+            String _engineName = _cmdArgs.getRequiredOption("engine");
+            this._engine = OraFile.Engine.valueOf(_engineName.toUpperCase());
+        }
+
+        if(_cmdArgs.hasOption("piece-size"))
+        {
+            this._pieceKb = Integer.parseInt(_cmdArgs.getRequiredOption("piece-size"));
+            if(this._pieceKb < 1)
+            {
+                throw new IllegalArgumentException("Piece size must be at least 1 KB: " + this._pieceKb);
+            }
+        }
+
+        if(_cmdArgs.hasOption("pipeline"))
+        {
+            this._pipeline = Integer.parseInt(_cmdArgs.getRequiredOption("pipeline"));
+        }
+
+        if(_cmdArgs.hasOption("stmt-cache"))
+        {
+            this._stmtCache = Integer.parseInt(_cmdArgs.getRequiredOption("stmt-cache"));
+        }
+
+        if(_cmdArgs.hasOption("pool-min"))
+        {
+            this._poolMin = Integer.parseInt(_cmdArgs.getRequiredOption("pool-min"));
+        }
+
+        if(_cmdArgs.hasOption("pool-max"))
+        {
+            this._poolMax = Integer.parseInt(_cmdArgs.getRequiredOption("pool-max"));
+            if(this._poolMax < connectionsPerJob())
+            {
+                // the main connection is held while the workers run.
+                throw new IllegalArgumentException(String.format(
+                        "Pool max must be at least %d for %d parallel connections: %d",
+                        connectionsPerJob(), this._parallel, this._poolMax));
+            }
+        }
+
+        if(_cmdArgs.hasOption("sdu"))
+        {
+            this._sdu = Integer.parseInt(_cmdArgs.getRequiredOption("sdu"));
+            if(this._sdu < 512 || this._sdu > 2097152)
+            {
+                throw new IllegalArgumentException("SDU must be between 512 and 2097152: " + this._sdu);
+            }
+        }
+
         // get database options
+        String _url = _cmdArgs.getRequiredOption("url");
+        if(this._sdu > 0)
+        {
+            _url = setSdu(_url, this._sdu);
+            LOG.debug("URL: {}", _url);
+        }
+
         _ods = new OracleDataSource();
-        _ods.setURL(_cmdArgs.getRequiredOption("url"));
+        _ods.setURL(_url);
         _ods.setUser(_cmdArgs.getRequiredOption("u"));
         _ods.setPassword(_cmdArgs.getRequiredOption("p"));
 
+        if(this._stmtCache > 0)
+        {
+            // cache the UTL_FILE statements on every connection we open including parallel workers.
+            Properties _props = new Properties();
+            _props.setProperty(OracleConnection.CONNECTION_PROPERTY_IMPLICIT_STATEMENT_CACHE_SIZE,
+                    Integer.toString(this._stmtCache));
+            _ods.setConnectionProperties(_props);
+            _ods.setImplicitCachingEnabled(true);
+            LOG.debug("Statement cache size: {}", this._stmtCache);
+        }
+
         // get database directory object name.
         this._sourceDbDir = _cmdArgs.getRequiredOption("s");
+
+        // each new connection loads UTL_FILE and caches the FGETATTR call before it is used.
+        _pool = new OraConnectionPool(_ods, this._poolMax);
+        _pool.setWarmUp(_dbc -> new OraFile(_dbc, this._sourceDbDir, WARMUP_FILE));
+    }
+
+    /**
+     * Add an SDU to the connect descriptor of a JDBC URL. An EZConnect URL is
+     * converted to a full descriptor because it has no place for the SDU.
+     * @param _url
+     * @param _sdu
+     * @return
+     */
+    static String setSdu(String _url, int _sdu)
+    {
+        String _sduParam = "(SDU=" + _sdu + ")";
+        Matcher _descMatch = Pattern.compile("\\(DESCRIPTION\\s*=", Pattern.CASE_INSENSITIVE).matcher(_url);
+        if(_descMatch.find())
+        {
+            return _url.substring(0, _descMatch.end()) + _sduParam + _url.substring(_descMatch.end());
+        }
+
+        Matcher _ezMatch = Pattern.compile("^(jdbc:oracle:thin:@)(?://)?([^:/]+):(\\d+)([/:])(.+)$").matcher(_url);
+        if(!_ezMatch.matches())
+        {
+            LOG.warn("SDU ignored for URL: {}", _url);
+            return _url;
+        }
+
+        String _connectData = _ezMatch.group(4).equals("/") ? "SERVICE_NAME=" : "SID=";
+        return String.format("%s(DESCRIPTION=%s(ADDRESS=(PROTOCOL=TCP)(HOST=%s)(PORT=%s))(CONNECT_DATA=(%s%s)))",
+                _ezMatch.group(1), _sduParam, _ezMatch.group(2), _ezMatch.group(3), _connectData,
+                _ezMatch.group(5));
     }
 
     /**
@@ -126,8 +416,23 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
     protected void handleDoTask(OcpTaskEnum _task, TaskDefinition<OcpTaskEnum> _taskDef)
             throws Exception
     {
+        OraMetrics.register();
+        OraMetrics.get().reset();
+        long _startMs = System.currentTimeMillis();
+        String _error = null;
+
+        // take the arguments before anything is logged because - sends the data to stdout.
+        String _arg1 = (_task == OcpTaskEnum.LIST) ? null : _taskDef.takeArg();
+        String _arg2 = (_task == OcpTaskEnum.CP || _task == OcpTaskEnum.GET || _task == OcpTaskEnum.MV
+                || _task == OcpTaskEnum.SYNC) ? _taskDef.takeArg() : null;
+        if(_task == OcpTaskEnum.GET && STDIO.equals(_arg2))
+        {
+            // the log and progress go to stderr so that the data stream stays clean.
+            System.setOut(System.err);
+        }
+
         LOG.info("Opening Connection...");
-        try(OracleConnection _dbc = (OracleConnection)_ods.getConnection())
+        try(OracleConnection _dbc = openMainConnection())
         {
             String _dbVersion = getDbVersion(_dbc);
             LOG.info("{}", _dbVersion);
@@ -137,22 +442,121 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
             _lastBytes = 0;
             switch(_task)
             {
+                case CP:
+                    doCopy(_dbc, _arg1, _arg2, false);
+                    break;
                 case GET:
-                    String _remoteFile = _taskDef.takeArg();
-                    String _localDir =  _taskDef.takeArg();
-                    doGet(_dbc, _remoteFile, _localDir);
+                    doGet(_dbc, _arg1, _arg2);
                     break;
                 case LIST:
                     doList(_dbc);
                     break;
+                case MV:
+                    doCopy(_dbc, _arg1, _arg2, true);
+                    break;
                 case PUT:
-                    String _localFile =  _taskDef.takeArg();
-                    doPut(_dbc, _localFile);
+                    doPut(_dbc, _arg1);
+                    break;
+                case RM:
+                    doRemove(_dbc, _arg1);
+                    break;
+                case STAT:
+                    doStat(_dbc, _arg1);
+                    break;
+                case SYNC:
+                    doSync(_dbc, _arg1, _arg2);
                     break;
                 default:
                     break;
             }
         }
+        catch(Exception _ex)
+        {
+            _error = String.valueOf(_ex.getMessage());
+            throw _ex;
+        }
+        finally
+        {
+            _pool.close();
+            reportMetrics(_task, System.currentTimeMillis() - _startMs, _error);
+        }
+    }
+
+    private OracleConnection openMainConnection()
+            throws SQLException
+    {
+        _pool.warm(Math.max(this._poolMin, 1));
+        return (OracleConnection)_pool.getConnection();
+    }
+
+    /**
+     * Log a summary of the database calls and write the JSON report if one
+     * was requested.
+     * @param _task
+     * @param _elapsedMs
+     * @param _error Message of the failure or null if the task completed.
+     */
+    private void reportMetrics(OcpTaskEnum _task, long _elapsedMs, String _error)
+    {
+        OraMetrics _metrics = OraMetrics.get();
+        LOG.info("Database calls: {} in {} ms, local I/O: {} ms, statements prepared: {}",
+                _metrics.getCallCount(), _metrics.getNetworkTimeMs(), _metrics.getLocalIoTimeMs(),
+                _metrics.getPrepareCount());
+
+        if(this._reportFile == null)
+        {
+            return;
+        }
+
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("{\n");
+        _sb.append(String.format("  \"task\": \"%s\",\n", _task.name().toLowerCase()));
+        _sb.append(String.format("  \"status\": \"%s\",\n", (_error == null) ? "complete" : "failed"));
+        if(_error != null)
+        {
+            _sb.append(String.format("  \"error\": %s,\n", jsonString(_error)));
+        }
+        _sb.append(String.format("  \"elapsedMs\": %d,\n", _elapsedMs));
+        _metrics.appendFields(_sb);
+        _sb.append("\n}\n");
+
+        try
+        {
+            Files.write(this._reportFile.toPath(), _sb.toString().getBytes(StandardCharsets.UTF_8));
+            LOG.info("Report: <{}>", this._reportFile.getCanonicalPath());
+        }
+        catch(IOException _ex)
+        {
+            LOG.warn("Could not write report {}: {}", this._reportFile, _ex.getMessage());
+        }
+    }
+
+    private static String jsonString(String _value)
+    {
+        StringBuilder _sb = new StringBuilder("\"");
+        for(char _ch : _value.toCharArray())
+        {
+            switch(_ch)
+            {
+                case '"':
+                    _sb.append("\\\"");
+                    break;
+                case '\\':
+                    _sb.append("\\\\");
+                    break;
+                default:
+                    if(_ch < 0x20)
+                    {
+                        _sb.append(String.format("\\u%04x", (int)_ch));
+                    }
+                    else
+                    {
+                        _sb.append(_ch);
+                    }
+                    break;
+            }
+        }
+        return _sb.append('"').toString();
     }
 
     /**
@@ -165,24 +569,530 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
     private void doGet(OracleConnection _dbc, String _sourceFile, String _destDirStr)
             throws Exception
     {
+        if(STDIO.equals(_destDirStr))
+        {
+            getStdout(_dbc, _sourceFile);
+            LOG.info("Transfer Complete!");
+            return;
+        }
+
         File _destDir = new File(_destDirStr);
         if(!_destDir.isDirectory())
         {
             throw new IOException("Could not find destination dir: " + _destDir.getCanonicalPath());
         }
 
+        if(!isPattern(_sourceFile))
+        {
+            if(this._parallel > 1)
+            {
+                _pool.warm(this._parallel);
+            }
+            getFile(_dbc, _sourceFile, _destDir, _progress);
+            LOG.info("Transfer Complete!");
+            return;
+        }
+
+        runBatch(findFiles(_dbc, _sourceFile), (_workerDbc, _fileName, _fileProgress) ->
+                getFile(_workerDbc, _fileName, _destDir, _fileProgress));
+    }
+
+    /**
+     * Resolve a glob pattern against the contents of the directory object.
+     * @param _dbc
+     * @param _pattern
+     * @return File names with their sizes.
+     * @throws SQLException
+     */
+    private Map<String, Long> findFiles(OracleConnection _dbc, String _pattern)
+            throws SQLException
+    {
+        OraFileFilter _filter = new OraFileFilter();
+        _filter.setNamePattern(_pattern);
+        Map<String, Long> _files = new LinkedHashMap<>();
+        try(Stream<OraFileInfo> _dirFiles = new OraFile(_dbc, _sourceDbDir).streamFileInfo(_filter))
+        {
+            _dirFiles.forEach(_info -> _files.put(_info.getFileName(), _info.length()));
+        }
+        return _files;
+    }
+
+    /**
+     * The names of a file or of the files that match a pattern.
+     * @param _dbc
+     * @param _sourceFile
+     * @return
+     * @throws Exception
+     */
+    private List<String> findSourceFiles(OracleConnection _dbc, String _sourceFile)
+            throws Exception
+    {
+        if(!isPattern(_sourceFile))
+        {
+            return Arrays.asList(_sourceFile);
+        }
+
+        List<String> _files = new ArrayList<>(findFiles(_dbc, _sourceFile).keySet());
+        if(_files.isEmpty())
+        {
+            throw new IOException("No files match the pattern.");
+        }
+        return _files;
+    }
+
+    /**
+     * Execute the CP or MV task. The data is copied or moved inside the
+     * database and never crosses the network.
+     * @param _dbc
+     * @param _sourceFile File or pattern in the source directory object.
+     * @param _dest Destination directory object optionally followed by /NAME.
+     * @param _move Move the files with UTL_FILE.FRENAME.
+     * @throws Exception
+     */
+    private void doCopy(OracleConnection _dbc, String _sourceFile, String _dest, boolean _move)
+            throws Exception
+    {
+        String _destDir = _dest;
+        String _destName = null;
+        int _slash = _dest.indexOf('/');
+        if(_slash >= 0)
+        {
+            _destDir = _dest.substring(0, _slash);
+            _destName = _dest.substring(_slash + 1).isEmpty() ? null : _dest.substring(_slash + 1);
+        }
+        if(_destName != null && isPattern(_sourceFile))
+        {
+            throw new IllegalArgumentException("A destination name can't be given with a pattern: " + _dest);
+        }
+
+        List<String> _files = findSourceFiles(_dbc, _sourceFile);
+        for(String _fileName : _files)
+        {
+            OraFile _oraFile = new OraFile(_dbc, _sourceDbDir, _fileName);
+            if(!_oraFile.exists())
+            {
+                throw new IOException("Could not find source file: " + _oraFile);
+            }
+            double _sizeMb = (double)_oraFile.length() / (double)(1024 * 1024);
+            LOG.info("Source: {} ({} MB)", _oraFile, _dFormat.format(_sizeMb));
+
+            String _target = (_destName != null) ? _destName : _fileName;
+            OraFile _destFile = new OraFile(_dbc, _destDir, _target);
+            if(_destFile.exists())
+            {
+                if(!this._force)
+                {
+                    throw new IOException("Destination file already exists: " + _destFile);
+                }
+                LOG.warn("Force overwrite of destination file!");
+            }
+            LOG.info("Destination: <{}>", _destFile);
+
+            if(_move)
+            {
+                _oraFile.rename(_destDir, _target, this._force);
+            }
+            else if(this._fcopy)
+            {
+                copyText(_oraFile, _destDir, _target);
+            }
+            else
+            {
+                _lastTimeMs = System.currentTimeMillis();
+                _lastBytes = 0;
+                _oraFile.copy(_destDir, _target, _progress);
+            }
+        }
+        LOG.info("Transfer Complete! ({} files)", _files.size());
+    }
+
+    /**
+     * Copy a file with UTL_FILE.FCOPY. The call does not return until the copy
+     * is done so the progress is shown by polling FGETATTR on the destination
+     * with another connection from the pool.
+     * @param _oraFile
+     * @param _destDir
+     * @param _destName
+     * @throws Exception
+     */
+    private void copyText(OraFile _oraFile, String _destDir, String _destName)
+            throws Exception
+    {
+        CompletableFuture<OraFile> _copy = CompletableFuture.supplyAsync(() ->
+        {
+            try
+            {
+                return _oraFile.copyText(_destDir, _destName);
+            }
+            catch(SQLException _ex)
+            {
+                throw new CompletionException(_ex);
+            }
+        });
+
+        _lastTimeMs = System.currentTimeMillis();
+        _lastBytes = 0;
+        while(true)
+        {
+            try
+            {
+                _copy.get(POLL_MS, TimeUnit.MILLISECONDS);
+                break;
+            }
+            catch(TimeoutException _ex)
+            {
+                if(this._poolMax == 1)
+                {
+                    // there is no connection to poll with.
+                    continue;
+                }
+                try(Connection _pollDbc = _pool.getConnection())
+                {
+                    long _length = new OraFile(_pollDbc, _destDir, _destName).length();
+                    _progress.update(_length, _oraFile.length());
+                }
+            }
+            catch(ExecutionException _ex)
+            {
+                Throwable _cause = _ex.getCause();
+                throw (_cause instanceof Exception) ? (Exception)_cause : _ex;
+            }
+        }
+        _progress.update(_oraFile.length(), _oraFile.length());
+    }
+
+    /**
+     * Execute the RM task. A pattern that matches more than one file needs
+     * --force. A file that can't be removed is logged and the rest are still
+     * removed.
+     * @param _dbc
+     * @param _sourceFile File or pattern in the directory object.
+     * @throws Exception if any of the files were not removed.
+     */
+    private void doRemove(OracleConnection _dbc, String _sourceFile)
+            throws Exception
+    {
+        List<String> _files = findSourceFiles(_dbc, _sourceFile);
+        if(_files.size() > 1 && !this._force)
+        {
+            throw new IOException(String.format("Pattern matches %d files. Use --force to remove them: %s",
+                    _files.size(), _sourceFile));
+        }
+
+        int _numFailed = 0;
+        for(String _fileName : _files)
+        {
+            OraFile _oraFile = new OraFile(_dbc, _sourceDbDir, _fileName);
+            try
+            {
+                _oraFile.remove();
+                LOG.info("Removed: {}", _oraFile);
+            }
+            catch(SQLException _ex)
+            {
+                _numFailed++;
+                LOG.error("Could not remove {}: {}", _oraFile, _ex.getMessage());
+            }
+        }
+
+        if(_numFailed > 0)
+        {
+            throw new Exception(String.format("Remove failed: %d of %d files were not removed.", _numFailed,
+                    _files.size()));
+        }
+        LOG.info("Removed {} files", _files.size());
+    }
+
+    /**
+     * Transfer one file from the database to a local directory.
+     * @param _dbc
+     * @param _sourceFile
+     * @param _destDir
+     * @param _fileProgress
+     * @throws Exception
+     */
+    private void getFile(OracleConnection _dbc, String _sourceFile, File _destDir, OraFile.Progress _fileProgress)
+            throws Exception
+    {
+        OraFile _oraFile = openGetSource(_dbc, _sourceFile);
+
+        File _localFile = new File(_destDir, _sourceFile);
+        LOG.info("Destination: <{}>", _localFile.getCanonicalPath());
+
+        if(this._parallel > 1 || this._autoTune)
+        {
+            OraParallelTransfer _transfer = newParallelTransfer(_dbc, _oraFile.getChunksPerCall());
+            _transfer.getContents(_oraFile, _localFile, _fileProgress);
+        }
+        else if(this._resume)
+        {
+            getResume(_oraFile, _localFile, _fileProgress);
+        }
+        else if(this._delta && _localFile.isFile())
+        {
+            OraDeltaTransfer _transfer = new OraDeltaTransfer(OraDeltaTransfer.DEFAULT_BLOCK);
+            _transfer.getContents(_oraFile, _localFile, _fileProgress);
+        }
+        else
+        {
+            try(FileOutputStream _os = new FileOutputStream(_localFile))
+            {
+                _oraFile.getContents(_os, _fileProgress);
+            }
+        }
+    }
+
+    /**
+     * Open a file in the database directory with the read settings of the
+     * command line.
+     * @param _dbc
+     * @param _sourceFile
+     * @return
+     * @throws SQLException
+     */
+    private OraFile openGetSource(OracleConnection _dbc, String _sourceFile)
+            throws SQLException
+    {
         OraFile _oraFile = new OraFile(_dbc, _sourceDbDir, _sourceFile);
+        if(this._chunks > 0)
+        {
+            _oraFile.setChunksPerCall(this._chunks);
+        }
+        _oraFile.setEngine(this._engine);
+        _oraFile.setCompress(this._compress);
+        if(this._pipeline >= 0)
+        {
+            _oraFile.setPipelineDepth(this._pipeline);
+        }
         double _sizeMb = (double)_oraFile.length() / (double)(1024 * 1024);
         LOG.info("Source: {} ({} MB)", _oraFile, _dFormat.format(_sizeMb));
+        LOG.debug("Read engine: {}", this._engine);
+        return _oraFile;
+    }
 
-        File _localFile = new File(_destDir, _sourceFile);
-        LOG.info("Destination: <{}>", _localFile.getCanonicalPath());
+    /**
+     * Stream one file from the database to stdout so that it can be piped to
+     * another program without staging it on disk.
+     * @param _dbc
+     * @param _sourceFile
+     * @throws Exception
+     */
+    private void getStdout(OracleConnection _dbc, String _sourceFile)
+            throws Exception
+    {
+        if(isPattern(_sourceFile))
+        {
+            throw new IllegalArgumentException("Only one file can be sent to stdout: " + _sourceFile);
+        }
+        checkStdioOptions();
+
+        OraFile _oraFile = openGetSource(_dbc, _sourceFile);
+        if(!_oraFile.exists())
+        {
+            throw new IOException("Could not find source file: " + _oraFile);
+        }
+        LOG.info("Destination: <stdout>");
+
+        // a pipe can't be written at a position so the channel transfer of a FileOutputStream is avoided.
+        OutputStream _os = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), STDIO_BUF);
+        _oraFile.getContents(_os, _progress);
+        _os.flush();
+    }
+
+    /**
+     * Check that no options are given that need a local file.
+     */
+    private void checkStdioOptions()
+    {
+        if(this._parallel > 1 || this._autoTune || this._resume || this._delta)
+        {
+            throw new IllegalArgumentException("Parallel, auto-tune, resume and delta need a local file.");
+        }
+    }
+
+    /**
+     * Create a transfer for --parallel or --auto-tune. With auto-tune the
+     * transfer starts from the current settings and the tuner may use up to
+     * TUNE_STREAMS connections or one less than --pool-max. In a batch these
+     * are divided between the jobs.
+     * @param _dbc Connection used to measure the round trip latency.
+     * @param _slices Initial number of 32 KB slices in each round trip.
+     * @return
+     * @throws SQLException
+     */
+    private OraParallelTransfer newParallelTransfer(OracleConnection _dbc, int _slices)
+            throws SQLException
+    {
+        if(!this._autoTune)
+        {
+            LOG.info("Parallel connections: {}", this._parallel);
+            return new OraParallelTransfer(_pool, _sourceDbDir, this._parallel);
+        }
 
-        try(FileOutputStream _os = new FileOutputStream(_localFile))
+        // jobs of a batch share the pool and each holds a connection of its own.
+        int _maxStreams;
+        if(this._poolMax <= 0)
+        {
+            _maxStreams = Math.max(1, TUNE_STREAMS / this._batchJobs);
+        }
+        else if(this._batchJobs > 1)
+        {
+            _maxStreams = Math.max(1, ((this._poolMax - 1) / this._batchJobs) - 1);
+        }
+        else
         {
-            _oraFile.getContents(_os, _progress);
+            _maxStreams = Math.max(1, this._poolMax - 1);
         }
-        LOG.info("Transfer Complete!");
+        OraAutoTuner _tuner = new OraAutoTuner(_slices, this._parallel, _maxStreams);
+        _tuner.measureLatency(_dbc);
+        LOG.info("Auto-tune: up to {} connections", _maxStreams);
+
+        OraParallelTransfer _transfer = new OraParallelTransfer(_pool, _sourceDbDir, _maxStreams);
+        _transfer.setAutoTuner(_tuner);
+        return _transfer;
+    }
+
+    /**
+     * Execute a GET that records its progress in a journal. If the journal of
+     * an earlier attempt matches the local file then the transfer continues
+     * from where it stopped.
+     * @param _oraFile
+     * @param _localFile
+     * @param _fileProgress
+     * @throws Exception
+     */
+    private void getResume(OraFile _oraFile, File _localFile, OraFile.Progress _fileProgress)
+            throws Exception
+    {
+        OcpJournal _journal = new OcpJournal(_localFile, _oraFile.toString(), _oraFile.length(), 0);
+        if(_localFile.isFile() && _journal.load() && _journal.verifyPrefix(_localFile))
+        {
+            LOG.info("Resuming transfer at {} KB", _journal.getOffset() / 1024);
+        }
+        else
+        {
+            _journal.reset();
+        }
+
+        final long _offset = _journal.getOffset();
+        try(FileOutputStream _fos = new FileOutputStream(_localFile, true))
+        {
+            // discard anything written after the last journal entry
+            _fos.getChannel().truncate(_offset);
+
+            OutputStream _os = _journal.wrap(_fos);
+            _journal.save(_offset);
+            _lastBytes = _offset;
+
+            _oraFile.getContents(_os, _offset, (_partBytes, _totalBytes) ->
+            {
+                _journal.save(_offset + _partBytes);
+                _fileProgress.update(_offset + _partBytes, _offset + _totalBytes);
+            });
+        }
+        _journal.delete();
+    }
+
+    /**
+     * Execute the SYNC task. Files are compared by size and modification time
+     * and only the files that are missing or differ at the destination are
+     * transferred.
+     * @param _dbc
+     * @param _direction get or put
+     * @param _localDirStr
+     * @throws Exception
+     */
+    private void doSync(OracleConnection _dbc, String _direction, String _localDirStr)
+            throws Exception
+    {
+        File _localDir = new File(_localDirStr);
+        File[] _dirFiles = _localDir.listFiles();
+        if(_dirFiles == null)
+        {
+            throw new IOException("Could not find local dir: " + _localDir.getCanonicalPath());
+        }
+
+        // skip the work files of interrupted transfers.
+        Map<String, File> _localFiles = new TreeMap<>();
+        Arrays.stream(_dirFiles)
+            .filter(_file -> _file.isFile() && !_file.getName().contains(".oracp-"))
+            .forEach(_file -> _localFiles.put(_file.getName(), _file));
+
+        Map<String, OraFileInfo> _remoteFiles = new TreeMap<>();
+        new OraFile(_dbc, _sourceDbDir).listFileInfo().stream()
+            .filter(_info -> !_info.getFileName().contains(".oracp-"))
+            .forEach(_info -> _remoteFiles.put(_info.getFileName(), _info));
+
+        Map<String, Long> _changed = new LinkedHashMap<>();
+        if("get".equalsIgnoreCase(_direction))
+        {
+            for(OraFileInfo _remote : _remoteFiles.values())
+            {
+                File _local = _localFiles.get(_remote.getFileName());
+                if(_local == null || isChanged(_remote.length(), _remote.lastModified(), _local.length(),
+                        _local.lastModified()))
+                {
+                    _changed.put(_remote.getFileName(), _remote.length());
+                }
+            }
+        }
+        else if("put".equalsIgnoreCase(_direction))
+        {
+            for(File _local : _localFiles.values())
+            {
+                OraFileInfo _remote = _remoteFiles.get(_local.getName());
+                if(_remote == null || isChanged(_local.length(), _local.lastModified(), _remote.length(),
+                        _remote.lastModified()))
+                {
+                    _changed.put(_local.getName(), _local.length());
+                }
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("Sync direction must be get or put: " + _direction);
+        }
+
+        LOG.info("Sync: {} of {} files changed", _changed.size(),
+                "get".equalsIgnoreCase(_direction) ? _remoteFiles.size() : _localFiles.size());
+        if(_changed.isEmpty())
+        {
+            LOG.info("Nothing to transfer.");
+            return;
+        }
+
+        if("get".equalsIgnoreCase(_direction))
+        {
+            runBatch(_changed, (_workerDbc, _fileName, _fileProgress) ->
+            {
+                getFile(_workerDbc, _fileName, _localDir, _fileProgress);
+
+                // keep the remote time so that the file is not seen as changed by the next sync.
+                long _mtime = _remoteFiles.get(_fileName).lastModified();
+                if(_mtime > 0)
+                {
+                    new File(_localDir, _fileName).setLastModified(_mtime);
+                }
+            });
+        }
+        else
+        {
+            runBatch(_changed, (_workerDbc, _fileName, _fileProgress) ->
+                putFile(_workerDbc, _localFiles.get(_fileName), true, _fileProgress));
+        }
+    }
+
+    /**
+     * A file is changed if the size is different or the source is newer than
+     * the destination. Times of 0 are unknown and are not compared.
+     */
+    private static boolean isChanged(long _srcLength, long _srcTime, long _destLength, long _destTime)
+    {
+        if(_srcLength != _destLength)
+        {
+            return true;
+        }
+        return (_srcTime > 0 && _destTime > 0 && _srcTime > _destTime);
     }
 
     /**
@@ -194,13 +1104,83 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
             throws SQLException
     {
         OraFile _oraFile = new OraFile(_dbc, _sourceDbDir);
-        String[] _fileList = _oraFile.listFiles();
+        SimpleDateFormat _timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        long[] _total = new long[2];
 
-        LOG.info("Total {} files in {}:", _fileList.length, _sourceDbDir);
-        Arrays.stream(_fileList).sorted().forEach(_file ->
+        // print each file as it is fetched instead of holding the whole directory in memory.
+        LOG.info("Files in {}:", _sourceDbDir);
+        try(Stream<OraFileInfo> _files = _oraFile.streamFileInfo(this._listFilter))
         {
-            LOG.info("  {}", _file);
-        });
+            _files.forEach(_info ->
+            {
+                String _time = (_info.lastModified() > 0)
+                        ? _timeFormat.format(new Date(_info.lastModified())) : "-";
+                LOG.info(String.format("  %19s %15d  %s", _time, _info.length(), _info.getFileName()));
+                _total[0]++;
+                _total[1] += _info.length();
+            });
+        }
+        LOG.info("Total {} files, {} bytes", _total[0], _total[1]);
+    }
+
+    /**
+     * Execute the STAT task.
+     * @param _dbc
+     * @param _fileArg Comma separated names or @ followed by a local file with one name on each line.
+     * @throws Exception
+     */
+    private void doStat(OracleConnection _dbc, String _fileArg)
+            throws Exception
+    {
+        List<String> _names = new ArrayList<>();
+        if(_fileArg.startsWith("@"))
+        {
+            Files.readAllLines(Paths.get(_fileArg.substring(1)), StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(_line -> !_line.isEmpty())
+                .forEach(_names::add);
+        }
+        else
+        {
+            Arrays.stream(_fileArg.split(","))
+                .map(String::trim)
+                .filter(_name -> !_name.isEmpty())
+                .forEach(_names::add);
+        }
+
+        int _found = 0;
+        LOG.info("Files in {}:", _sourceDbDir);
+        for(OraFileStat _stat : new OraFile(_dbc, _sourceDbDir).stat(_names))
+        {
+            if(_stat.exists())
+            {
+                _found++;
+                LOG.info(String.format("  %15d %7d  %s", _stat.length(), _stat.getBlockSize(), _stat.getFileName()));
+            }
+            else
+            {
+                LOG.info(String.format("  %15s %7s  %s", "missing", "-", _stat.getFileName()));
+            }
+        }
+        LOG.info("{} of {} files exist", _found, _names.size());
+    }
+
+    /**
+     * Parse a local date or date and time given on the command line.
+     * @return Milliseconds since the epoch.
+     */
+    private static long parseTime(String _time)
+    {
+        try
+        {
+            LocalDateTime _local = _time.contains("T") ? LocalDateTime.parse(_time)
+                    : LocalDate.parse(_time).atStartOfDay();
+            return _local.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        catch(DateTimeParseException _ex)
+        {
+            throw new IllegalArgumentException("Invalid date: " + _time, _ex);
+        }
     }
 
     /**
@@ -212,7 +1192,55 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
     private void doPut(OracleConnection _dbc, String _sourceFile)
             throws Exception
     {
-        File _localFile = new File(_sourceFile);
+        if(STDIO.equals(_sourceFile))
+        {
+            putStdin(_dbc);
+            LOG.info("Transfer Complete!");
+            return;
+        }
+
+        File _sourcePath = new File(_sourceFile);
+        if(!isPattern(_sourcePath.getName()))
+        {
+            if(this._parallel > 1)
+            {
+                _pool.warm(this._parallel);
+            }
+            putFile(_dbc, _sourcePath, this._force, _progress);
+            LOG.info("Transfer Complete!");
+            return;
+        }
+
+        // resolve the pattern against the files in the local directory.
+        File _sourceDir = _sourcePath.getAbsoluteFile().getParentFile();
+        PathMatcher _matcher = FileSystems.getDefault().getPathMatcher("glob:" + _sourcePath.getName());
+        File[] _dirFiles = _sourceDir.listFiles();
+        if(_dirFiles == null)
+        {
+            throw new IOException("Could not find source dir: " + _sourceDir.getCanonicalPath());
+        }
+
+        Map<String, Long> _files = new LinkedHashMap<>();
+        Arrays.stream(_dirFiles)
+            .filter(_file -> _file.isFile() && _matcher.matches(Paths.get(_file.getName())))
+            .sorted()
+            .forEach(_file -> _files.put(_file.getPath(), _file.length()));
+
+        runBatch(_files, (_workerDbc, _fileName, _fileProgress) ->
+                putFile(_workerDbc, new File(_fileName), this._force, _fileProgress));
+    }
+
+    /**
+     * Transfer one local file to the database directory.
+     * @param _dbc
+     * @param _localFile
+     * @param _overwrite Replace the destination if it exists.
+     * @param _fileProgress
+     * @throws Exception
+     */
+    private void putFile(OracleConnection _dbc, File _localFile, boolean _overwrite, OraFile.Progress _fileProgress)
+            throws Exception
+    {
         if(!_localFile.isFile())
         {
             throw new IOException("Could not find source file: " + _localFile.getCanonicalPath());
@@ -221,24 +1249,191 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
         double _sizeMb = (double)_localFile.length() / (double)(1024 * 1024);
         LOG.info("Source: {} ({} MB)", _localFile.getCanonicalPath(), _dFormat.format(_sizeMb));
 
-        OraFile _oraFile = new OraFile(_dbc, _sourceDbDir, _localFile.getName());
-        if(_oraFile.exists() && !this._force)
+        OraFile _oraFile = openPutDest(_dbc, _localFile.getName());
+        OcpJournal _journal = null;
+        long _offset = 0;
+        if(this._resume)
+        {
+            _journal = new OcpJournal(_localFile, _oraFile.toString(), _localFile.length(),
+                    _localFile.lastModified());
+            if(_oraFile.exists() && _journal.load())
+            {
+                // the remote length is what was actually committed by the last attempt.
+                _offset = _oraFile.length();
+                if(_offset > _localFile.length())
+                {
+                    throw new IOException("Destination is larger than the source: " + _oraFile);
+                }
+                LOG.info("Resuming transfer at {} KB", _offset / 1024);
+            }
+        }
+
+        if(_offset == 0)
+        {
+            if(_oraFile.exists() && !_overwrite)
+            {
+                throw new Exception("Detination file already exists: " + _oraFile);
+            }
+            else
+            {
+                LOG.warn("Force overwrite of destination file!");
+            }
+        }
+
+        LOG.info("Destination: <{}>", _oraFile);
+
+        if(this._parallel > 1 || this._autoTune)
         {
-            throw new Exception("Detination file already exists: " + _oraFile);
+            OraParallelTransfer _transfer = newParallelTransfer(_dbc, _oraFile.getPieceSize() / (32 * 1024));
+            _transfer.putContents(_localFile, _oraFile, _fileProgress);
+        }
+        else if(_journal != null)
+        {
+            final OcpJournal _putJournal = _journal;
+            final long _putOffset = _offset;
+            _putJournal.save(_putOffset);
+            _lastBytes = _putOffset;
+
+            try(FileInputStream _is = new FileInputStream(_localFile))
+            {
+                _oraFile.putContents(_is, _putOffset, (_partBytes, _totalBytes) ->
+                {
+                    _putJournal.save(_putOffset + _partBytes);
+                    _fileProgress.update(_putOffset + _partBytes, _putOffset + _totalBytes);
+                });
+            }
+            _putJournal.delete();
+        }
+        else if(this._delta && _oraFile.exists())
+        {
+            OraDeltaTransfer _transfer = new OraDeltaTransfer(OraDeltaTransfer.DEFAULT_BLOCK);
+            _transfer.putContents(_localFile, _oraFile, _fileProgress);
         }
         else
         {
-            LOG.warn("Force overwrite of destination file!");
+            try(FileInputStream _is = new FileInputStream(_localFile))
+            {
+                _oraFile.putContents(_is, _fileProgress);
+            }
+        }
+    }
+
+    /**
+     * Open a file in the database directory with the write settings of the
+     * command line.
+     * @param _dbc
+     * @param _destFile
+     * @return
+     * @throws SQLException
+     */
+    private OraFile openPutDest(OracleConnection _dbc, String _destFile)
+            throws SQLException
+    {
+        OraFile _oraFile = new OraFile(_dbc, _sourceDbDir, _destFile);
+        if(this._pieceKb > 0)
+        {
+            _oraFile.setPieceSize(this._pieceKb * 1024);
+        }
+        _oraFile.setCompress(this._compress);
+        if(this._pipeline >= 0)
+        {
+            _oraFile.setPipelineDepth(this._pipeline);
+        }
+        return _oraFile;
+    }
+
+    /**
+     * Stream stdin to a file in the database directory named by --name. The
+     * length is not known in advance so the progress shows only the bytes
+     * sent.
+     * @param _dbc
+     * @throws Exception
+     */
+    private void putStdin(OracleConnection _dbc)
+            throws Exception
+    {
+        if(this._putName == null)
+        {
+            throw new IllegalArgumentException("The name option is required when the source is stdin.");
         }
+        checkStdioOptions();
+        LOG.info("Source: <stdin>");
 
+        OraFile _oraFile = openPutDest(_dbc, this._putName);
+        if(_oraFile.exists())
+        {
+            if(!this._force)
+            {
+                throw new IOException("Destination file already exists: " + _oraFile);
+            }
+            LOG.warn("Force overwrite of destination file!");
+        }
         LOG.info("Destination: <{}>", _oraFile);
 
-        try(FileInputStream _is = new FileInputStream(_localFile))
+        // a pipe has no size or position so the channel transfer of a FileInputStream is avoided.
+        InputStream _is = new BufferedInputStream(new FileInputStream(FileDescriptor.in), STDIO_BUF);
+        _oraFile.putContents(_is, _progress);
+    }
+
+    /**
+     * Transfer a set of files with a pool of {@code --jobs} connections.
+     * @param _files File names with their sizes.
+     * @param _task Transfer of a single file.
+     * @throws Exception if any of the files failed.
+     */
+    private void runBatch(Map<String, Long> _files, OcpBatch.FileTask _task)
+            throws Exception
+    {
+        if(_files.isEmpty())
+        {
+            throw new IOException("No files match the pattern.");
+        }
+
+        // each job holds a connection and its parallel workers use more. The
+        // main connection is also held so the jobs get what is left.
+        int _jobs = Math.min(this._jobs, _files.size());
+        if(this._poolMax > 0 && 1 + (_jobs * connectionsPerJob()) > this._poolMax)
         {
-            _oraFile.putContents(_is, _progress);
+            _jobs = (this._poolMax - 1) / connectionsPerJob();
+            if(_jobs < 1)
+            {
+                throw new IllegalArgumentException(String.format(
+                        "Pool max must be at least %d for a batch with %d parallel connections: %d",
+                        1 + connectionsPerJob(), this._parallel, this._poolMax));
+            }
+            LOG.info("Batch: jobs reduced to {} for pool max {}", _jobs, this._poolMax);
         }
+        _pool.warm(_jobs * connectionsPerJob());
 
-        LOG.info("Transfer Complete!");
+        double _sizeMb = (double)_files.values().stream().mapToLong(Long::longValue).sum() / (double)(1024 * 1024);
+        LOG.info("Batch: {} files ({} MB) with {} jobs", _files.size(), _dFormat.format(_sizeMb), _jobs);
+        this._batchJobs = _jobs;
+        OcpBatch _batch = new OcpBatch(_pool, _jobs);
+        int _numFailed = _batch.run(_files, _task, _progress);
+        if(_numFailed > 0)
+        {
+            throw new Exception(String.format("Batch failed: %d of %d files were not transferred.", _numFailed,
+                    _files.size()));
+        }
+        LOG.info("Transfer Complete! ({} files)", _files.size());
+    }
+
+    /**
+     * Connections used by the transfer of one file: its own and one for each
+     * parallel worker.
+     */
+    private int connectionsPerJob()
+    {
+        return (this._parallel > 1 || this._autoTune) ? this._parallel + 1 : 1;
+    }
+
+    /**
+     * A file name is treated as a glob pattern if it contains any of the glob
+     * special characters.
+     */
+    private static boolean isPattern(String _fileName)
+    {
+        return _fileName.matches(".*[*?\\[{].*");
     }
 
     /**
@@ -250,9 +1445,18 @@ public class OcpTaskDriver extends TaskDriver<OcpTaskDriver.OcpTaskEnum>
         long _diffBytes = _partBytes - this._lastBytes;
         LOG.debug("diffBytes=<{}>, diffMs=<{}>", _diffBytes, _diffMs);
 
-        double _pctComplete = ((double)_partBytes / (double)_totalBytes) * 100;
-        double _rateKbSec = ((double)_diffBytes / 1024) / ((double)_diffMs / 1000);
+        // two updates in the same millisecond would give an infinite rate.
+        double _rateKbSec = ((double)_diffBytes / 1024) / ((double)Math.max(_diffMs, 1) / 1000);
+        if(_totalBytes < 0)
+        {
+            // the length of a stream is not known
+            LOG.info("  {} KB ({} KB/sec)", _partBytes / 1024, _dFormat.format(_rateKbSec));
+            _lastTimeMs += _diffMs;
+            _lastBytes = _partBytes;
+            return;
+        }
 
+        double _pctComplete = ((double)_partBytes / (double)_totalBytes) * 100;
         LOG.info("  {}% ({}/{} KB) ({} KB/sec)",
                 _dFormat.format(_pctComplete),
                 _partBytes / 1024,
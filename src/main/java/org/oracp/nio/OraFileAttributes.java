@@ -0,0 +1,131 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.nio;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Basic attributes of a file or directory object. The times are the
+ * modification time when the database can report it and otherwise the epoch.
+ * @author Chad Juliano
+ */
+class OraFileAttributes implements BasicFileAttributes
+{
+    private final boolean  _directory;
+    private final long     _size;
+    private final FileTime _lastModified;
+
+    /**
+     * Constructor
+     * @param _directory True for the root or a directory object.
+     * @param _size
+     * @param _lastModified Milliseconds since the epoch or 0 if unknown.
+     */
+    OraFileAttributes(boolean _directory, long _size, long _lastModified)
+    {
+        this._directory = _directory;
+        this._size = _size;
+        this._lastModified = FileTime.fromMillis(Math.max(_lastModified, 0));
+    }
+
+    @Override
+    public FileTime lastModifiedTime()
+    {
+        return this._lastModified;
+    }
+
+    @Override
+    public FileTime lastAccessTime()
+    {
+        return this._lastModified;
+    }
+
+    @Override
+    public FileTime creationTime()
+    {
+        return this._lastModified;
+    }
+
+    @Override
+    public boolean isRegularFile()
+    {
+        return !this._directory;
+    }
+
+    @Override
+    public boolean isDirectory()
+    {
+        return this._directory;
+    }
+
+    @Override
+    public boolean isSymbolicLink()
+    {
+        return false;
+    }
+
+    @Override
+    public boolean isOther()
+    {
+        return false;
+    }
+
+    @Override
+    public long size()
+    {
+        return this._size;
+    }
+
+    @Override
+    public Object fileKey()
+    {
+        return null;
+    }
+
+    /**
+     * The attributes of the basic view by name.
+     * @param _names Comma separated names or *.
+     * @return
+     */
+    Map<String, Object> toMap(String _names)
+    {
+        Map<String, Object> _all = new LinkedHashMap<>();
+        _all.put("lastModifiedTime", lastModifiedTime());
+        _all.put("lastAccessTime", lastAccessTime());
+        _all.put("creationTime", creationTime());
+        _all.put("size", size());
+        _all.put("isRegularFile", isRegularFile());
+        _all.put("isDirectory", isDirectory());
+        _all.put("isSymbolicLink", isSymbolicLink());
+        _all.put("isOther", isOther());
+        _all.put("fileKey", fileKey());
+
+        if("*".equals(_names))
+        {
+            return _all;
+        }
+
+        Map<String, Object> _result = new LinkedHashMap<>();
+        for(String _name : _names.split(","))
+        {
+            if(!_all.containsKey(_name))
+            {
+                throw new IllegalArgumentException("Unknown attribute: " + _name);
+            }
+            _result.put(_name, _all.get(_name));
+        }
+        return _result;
+    }
+}
@@ -0,0 +1,785 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.nio;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.oracp.sql.OraConnectionPool;
+import org.oracp.sql.OraFile;
+import org.oracp.sql.OraFileChannel;
+import org.oracp.sql.OraFileFilter;
+import org.oracp.sql.OraFileInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The directory objects of one database seen as a file system. The root
+ * contains the directory objects and each of them contains files. Every
+ * operation borrows a connection from a pool that is closed with the file
+ * system. Attributes read by FGETATTR or a directory listing are cached for
+ * a short time so that a sequence like exists, size and open does not make
+ * a round trip for each call.
+ * @see OraFileSystemProvider
+ * @author Chad Juliano
+ */
+class OraFileSystem extends FileSystem
+{
+    private static final Logger          LOG      = LoggerFactory.getLogger(OraFileSystem.class);
+    private static final int             COPY_BUF = 1024 * 1024;
+
+    private final OraFileSystemProvider  _provider;
+    private final String                 _name;
+    private final OraConnectionPool      _pool;
+    private final long                   _cacheMs;
+    private final OraPath                _root;
+    private final Map<OraPath, CachedAttributes> _cache = new ConcurrentHashMap<>();
+    private volatile boolean             _open    = true;
+
+    /**
+     * Attributes and the time they stop being used.
+     */
+    private static class CachedAttributes
+    {
+        private final OraFileAttributes _attrs;
+        private final long              _expires;
+
+        private CachedAttributes(OraFileAttributes _attrs, long _expires)
+        {
+            this._attrs = _attrs;
+            this._expires = _expires;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param _provider
+     * @param _name Authority of the URI.
+     * @param _pool Connections to the database. It is closed with the file system.
+     * @param _cacheMs Time attributes are cached or 0 to disable the cache.
+     */
+    OraFileSystem(OraFileSystemProvider _provider, String _name, OraConnectionPool _pool, long _cacheMs)
+    {
+        this._provider = _provider;
+        this._name = _name;
+        this._pool = _pool;
+        this._cacheMs = _cacheMs;
+        this._root = new OraPath(this, "/");
+    }
+
+    /**
+     * The authority of the URIs of this file system.
+     * @return
+     */
+    String getName()
+    {
+        return this._name;
+    }
+
+    @Override
+    public OraFileSystemProvider provider()
+    {
+        return this._provider;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if(!this._open)
+        {
+            return;
+        }
+        this._open = false;
+        this._provider.remove(this);
+        this._cache.clear();
+        this._pool.close();
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this._open;
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+        return false;
+    }
+
+    @Override
+    public String getSeparator()
+    {
+        return "/";
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories()
+    {
+        return Collections.singletonList(this._root);
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores()
+    {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews()
+    {
+        return Collections.singleton("basic");
+    }
+
+    @Override
+    public OraPath getPath(String _first, String... _more)
+    {
+        if(_more.length == 0)
+        {
+            return new OraPath(this, _first);
+        }
+        return new OraPath(this, _first + "/" + String.join("/", _more));
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String _syntaxAndPattern)
+    {
+        // the names are matched with the rules of the local file system.
+        PathMatcher _matcher = FileSystems.getDefault().getPathMatcher(_syntaxAndPattern);
+        return _path -> _matcher.matches(Paths.get(_path.toString()));
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService()
+    {
+        throw new UnsupportedOperationException("Directory objects do not have owners");
+    }
+
+    @Override
+    public WatchService newWatchService()
+            throws IOException
+    {
+        throw new UnsupportedOperationException("Directory objects can't be watched");
+    }
+
+    /**
+     * Read the attributes of a path from the cache or the database.
+     * @param _path
+     * @return
+     * @throws IOException
+     */
+    OraFileAttributes readAttributes(Path _path)
+            throws IOException
+    {
+        OraPath _absPath = toAbsolute(_path);
+        CachedAttributes _cached = this._cache.get(_absPath);
+        if(_cached != null && _cached._expires > System.currentTimeMillis())
+        {
+            return _cached._attrs;
+        }
+
+        if(_absPath.getNameCount() == 0)
+        {
+            return new OraFileAttributes(true, 0, 0);
+        }
+
+        if(_absPath.getNameCount() == 1)
+        {
+            // cache all the directory objects with one query.
+            for(String _dirName : listDirectories())
+            {
+                cache(this._root.resolve(_dirName), new OraFileAttributes(true, 0, 0));
+            }
+            _cached = this._cache.get(_absPath);
+            if(_cached == null)
+            {
+                throw new NoSuchFileException(_absPath.toString());
+            }
+            return _cached._attrs;
+        }
+
+        checkFile(_absPath);
+        try(Connection _dbc = this._pool.getConnection())
+        {
+            OraFile _file = new OraFile(_dbc, _absPath.getDirectory(), _absPath.getFileNameString());
+            if(!_file.exists())
+            {
+                throw new NoSuchFileException(_absPath.toString());
+            }
+            OraFileAttributes _attrs = new OraFileAttributes(false, _file.length(), 0);
+            cache(_absPath, _attrs);
+            return _attrs;
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    /**
+     * Open a file for reading or writing. UTL_FILE can't do both and a file
+     * opened for writing is truncated unless APPEND is given.
+     * @param _path
+     * @param _options
+     * @return
+     * @throws IOException
+     */
+    SeekableByteChannel newByteChannel(Path _path, Set<? extends OpenOption> _options)
+            throws IOException
+    {
+        OraPath _absPath = checkFile(toAbsolute(_path));
+        boolean _write = _options.contains(StandardOpenOption.WRITE)
+                || _options.contains(StandardOpenOption.APPEND);
+        if(_write && _options.contains(StandardOpenOption.READ))
+        {
+            throw new UnsupportedOperationException("UTL_FILE can't open a file for reading and writing");
+        }
+
+        Connection _dbc = null;
+        try
+        {
+            _dbc = this._pool.getConnection();
+            OraFile _file = new OraFile(_dbc, _absPath.getDirectory(), _absPath.getFileNameString());
+            OraFileChannel _channel;
+            if(_write)
+            {
+                if(_file.exists() && _options.contains(StandardOpenOption.CREATE_NEW))
+                {
+                    throw new FileAlreadyExistsException(_absPath.toString());
+                }
+                if(!_file.exists() && !_options.contains(StandardOpenOption.CREATE)
+                        && !_options.contains(StandardOpenOption.CREATE_NEW))
+                {
+                    throw new NoSuchFileException(_absPath.toString());
+                }
+                this._cache.remove(_absPath);
+                _channel = _file.openWriteChannel(_options.contains(StandardOpenOption.APPEND));
+            }
+            else
+            {
+                if(!_file.exists())
+                {
+                    throw new NoSuchFileException(_absPath.toString());
+                }
+                cache(_absPath, new OraFileAttributes(false, _file.length(), 0));
+                _channel = _file.openReadChannel();
+            }
+            return new PooledChannel(_channel, _dbc, _write ? _absPath : null);
+        }
+        catch(SQLException _ex)
+        {
+            closeQuietly(_dbc);
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+        catch(IOException | RuntimeException _ex)
+        {
+            closeQuietly(_dbc);
+            throw _ex;
+        }
+    }
+
+    /**
+     * List the directory objects of the root or the files of a directory
+     * object. The files are fetched as the stream is iterated and their
+     * attributes are cached.
+     * @param _dir
+     * @param _filter
+     * @return
+     * @throws IOException
+     */
+    DirectoryStream<Path> newDirectoryStream(Path _dir, DirectoryStream.Filter<? super Path> _filter)
+            throws IOException
+    {
+        OraPath _absDir = toAbsolute(_dir);
+        if(_absDir.getNameCount() == 0)
+        {
+            List<Path> _dirs = listDirectories().stream()
+                .map(_dirName -> this._root.resolve(_dirName))
+                .collect(Collectors.toList());
+            return new OraDirectoryStream(_dirs.iterator(), _filter, null);
+        }
+
+        if(!readAttributes(_absDir).isDirectory())
+        {
+            throw new NotDirectoryException(_absDir.toString());
+        }
+
+        Connection _dbc = null;
+        try
+        {
+            _dbc = this._pool.getConnection();
+            Stream<OraFileInfo> _files = new OraFile(_dbc, _absDir.getDirectory())
+                .streamFileInfo(new OraFileFilter());
+
+            final Connection _listDbc = _dbc;
+            Iterator<Path> _paths = _files.map(_info ->
+            {
+                OraPath _path = (OraPath)_absDir.resolve(_info.getFileName());
+                cache(_path, new OraFileAttributes(false, _info.length(), _info.lastModified()));
+                return (Path)_path;
+            }).iterator();
+
+            return new OraDirectoryStream(_paths, _filter, () ->
+            {
+                try
+                {
+                    _files.close();
+                }
+                finally
+                {
+                    closeQuietly(_listDbc);
+                }
+            });
+        }
+        catch(SQLException _ex)
+        {
+            closeQuietly(_dbc);
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    /**
+     * Remove a file with UTL_FILE.FREMOVE.
+     * @param _path
+     * @throws IOException
+     */
+    void delete(Path _path)
+            throws IOException
+    {
+        OraPath _absPath = checkFile(toAbsolute(_path));
+        try(Connection _dbc = this._pool.getConnection())
+        {
+            OraFile _file = new OraFile(_dbc, _absPath.getDirectory(), _absPath.getFileNameString());
+            if(!_file.exists())
+            {
+                throw new NoSuchFileException(_absPath.toString());
+            }
+            _file.remove();
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+        finally
+        {
+            this._cache.remove(_absPath);
+        }
+    }
+
+    /**
+     * Copy a file inside the database or through the client when the target
+     * is in another database.
+     * @param _source
+     * @param _target
+     * @param _options
+     * @throws IOException
+     */
+    void copy(Path _source, Path _target, CopyOption... _options)
+            throws IOException
+    {
+        OraPath _srcPath = checkFile(toAbsolute(_source));
+        OraPath _destPath = checkFile(toAbsolute(_target));
+        if(_srcPath.equals(_destPath))
+        {
+            return;
+        }
+
+        boolean _replace = Arrays.asList(_options).contains(StandardCopyOption.REPLACE_EXISTING);
+        if(_destPath.getFileSystem() == this)
+        {
+            copyInDatabase(_srcPath, _destPath, _replace);
+            return;
+        }
+
+        Set<StandardOpenOption> _openOptions = EnumSet.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if(!_replace)
+        {
+            _openOptions.add(StandardOpenOption.CREATE_NEW);
+        }
+
+        LOG.debug("Copy: {} -> {}", _srcPath.toUri(), _destPath.toUri());
+        try(SeekableByteChannel _in = newByteChannel(_srcPath, Collections.singleton(StandardOpenOption.READ));
+                SeekableByteChannel _out = _destPath.getFileSystem().newByteChannel(_destPath, _openOptions))
+        {
+            ByteBuffer _bb = ByteBuffer.allocate(COPY_BUF);
+            boolean _eof = false;
+            while(!_eof)
+            {
+                // fill the buffer so that each write is a full piece.
+                while(_bb.hasRemaining() && !_eof)
+                {
+                    _eof = (_in.read(_bb) < 0);
+                }
+
+                _bb.flip();
+                while(_bb.hasRemaining())
+                {
+                    _out.write(_bb);
+                }
+                _bb.clear();
+            }
+        }
+    }
+
+    private void copyInDatabase(OraPath _srcPath, OraPath _destPath, boolean _replace)
+            throws IOException
+    {
+        LOG.debug("Copy: {} -> {}", _srcPath.toUri(), _destPath.toUri());
+        try(Connection _dbc = this._pool.getConnection())
+        {
+            OraFile _file = new OraFile(_dbc, _srcPath.getDirectory(), _srcPath.getFileNameString());
+            if(!_file.exists())
+            {
+                throw new NoSuchFileException(_srcPath.toString());
+            }
+            if(!_replace && new OraFile(_dbc, _destPath.getDirectory(), _destPath.getFileNameString()).exists())
+            {
+                throw new FileAlreadyExistsException(_destPath.toString());
+            }
+            _file.copy(_destPath.getDirectory(), _destPath.getFileNameString(), null);
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+        finally
+        {
+            this._cache.remove(_destPath);
+        }
+    }
+
+    /**
+     * Move a file with UTL_FILE.FRENAME or with a copy and delete when the
+     * target is in another database.
+     * @param _source
+     * @param _target
+     * @param _options
+     * @throws IOException
+     */
+    void move(Path _source, Path _target, CopyOption... _options)
+            throws IOException
+    {
+        OraPath _srcPath = checkFile(toAbsolute(_source));
+        OraPath _destPath = checkFile(toAbsolute(_target));
+        if(_srcPath.equals(_destPath))
+        {
+            return;
+        }
+
+        if(_destPath.getFileSystem() != this)
+        {
+            copy(_srcPath, _destPath, _options);
+            delete(_srcPath);
+            return;
+        }
+
+        boolean _replace = Arrays.asList(_options).contains(StandardCopyOption.REPLACE_EXISTING);
+        try(Connection _dbc = this._pool.getConnection())
+        {
+            OraFile _file = new OraFile(_dbc, _srcPath.getDirectory(), _srcPath.getFileNameString());
+            if(!_file.exists())
+            {
+                throw new NoSuchFileException(_srcPath.toString());
+            }
+            if(!_replace && new OraFile(_dbc, _destPath.getDirectory(), _destPath.getFileNameString()).exists())
+            {
+                throw new FileAlreadyExistsException(_destPath.toString());
+            }
+            _file.rename(_destPath.getDirectory(), _destPath.getFileNameString(), _replace);
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+        finally
+        {
+            this._cache.remove(_srcPath);
+            this._cache.remove(_destPath);
+        }
+    }
+
+    private List<String> listDirectories()
+            throws IOException
+    {
+        try(Connection _dbc = this._pool.getConnection())
+        {
+            return OraFile.listDirectories(_dbc);
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    private void cache(Path _path, OraFileAttributes _attrs)
+    {
+        if(this._cacheMs > 0)
+        {
+            this._cache.put((OraPath)_path, new CachedAttributes(_attrs, System.currentTimeMillis() + this._cacheMs));
+        }
+    }
+
+    private OraPath toAbsolute(Path _path)
+    {
+        if(!this._open)
+        {
+            throw new ClosedFileSystemException();
+        }
+        if(!(_path instanceof OraPath))
+        {
+            throw new ProviderMismatchException("Not an oracp path: " + _path);
+        }
+        return (OraPath)_path.toAbsolutePath().normalize();
+    }
+
+    /**
+     * Check that a path names a file in a directory object.
+     */
+    private static OraPath checkFile(OraPath _path)
+            throws IOException
+    {
+        if(_path.getNameCount() != 2)
+        {
+            throw new NoSuchFileException(_path.toString(), null, "Not a file in a directory object");
+        }
+        return _path;
+    }
+
+    private static void closeQuietly(Connection _dbc)
+    {
+        if(_dbc == null)
+        {
+            return;
+        }
+        try
+        {
+            _dbc.close();
+        }
+        catch(SQLException _ex)
+        {
+            LOG.debug("Failed to release connection: {}", _ex.getMessage());
+        }
+    }
+
+    /**
+     * A channel that gives its connection back to the pool when it is closed.
+     */
+    private class PooledChannel implements SeekableByteChannel
+    {
+        private final OraFileChannel _channel;
+        private final Connection     _dbc;
+        private final OraPath        _writePath;
+
+        private PooledChannel(OraFileChannel _channel, Connection _dbc, OraPath _writePath)
+        {
+            this._channel = _channel;
+            this._dbc = _dbc;
+            this._writePath = _writePath;
+        }
+
+        @Override
+        public boolean isOpen()
+        {
+            return this._channel.isOpen();
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            if(!this._channel.isOpen())
+            {
+                return;
+            }
+            try
+            {
+                this._channel.close();
+            }
+            finally
+            {
+                closeQuietly(this._dbc);
+                if(this._writePath != null)
+                {
+                    OraFileSystem.this._cache.remove(this._writePath);
+                }
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer _dst)
+                throws IOException
+        {
+            return this._channel.read(_dst);
+        }
+
+        @Override
+        public int write(ByteBuffer _src)
+                throws IOException
+        {
+            return this._channel.write(_src);
+        }
+
+        @Override
+        public long position()
+                throws IOException
+        {
+            return this._channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long _newPosition)
+                throws IOException
+        {
+            this._channel.position(_newPosition);
+            return this;
+        }
+
+        @Override
+        public long size()
+                throws IOException
+        {
+            return this._channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long _size)
+                throws IOException
+        {
+            this._channel.truncate(_size);
+            return this;
+        }
+    }
+
+    /**
+     * Iterates the entries of a directory once and applies a filter.
+     */
+    private static class OraDirectoryStream implements DirectoryStream<Path>
+    {
+        private final Iterator<Path>                    _paths;
+        private final DirectoryStream.Filter<? super Path> _filter;
+        private final Runnable                          _onClose;
+        private boolean                                 _iterated = false;
+        private boolean                                 _closed   = false;
+
+        private OraDirectoryStream(Iterator<Path> _paths, DirectoryStream.Filter<? super Path> _filter,
+                Runnable _onClose)
+        {
+            this._paths = _paths;
+            this._filter = _filter;
+            this._onClose = _onClose;
+        }
+
+        @Override
+        public Iterator<Path> iterator()
+        {
+            if(this._iterated || this._closed)
+            {
+                throw new IllegalStateException("Directory stream is closed or already iterated");
+            }
+            this._iterated = true;
+
+            return new Iterator<Path>()
+            {
+                private Path _next = null;
+
+                @Override
+                public boolean hasNext()
+                {
+                    try
+                    {
+                        while(this._next == null && !OraDirectoryStream.this._closed
+                                && OraDirectoryStream.this._paths.hasNext())
+                        {
+                            Path _path = OraDirectoryStream.this._paths.next();
+                            if(OraDirectoryStream.this._filter == null
+                                    || OraDirectoryStream.this._filter.accept(_path))
+                            {
+                                this._next = _path;
+                            }
+                        }
+                    }
+                    catch(IOException _ex)
+                    {
+                        throw new DirectoryIteratorException(_ex);
+                    }
+                    catch(UncheckedIOException _ex)
+                    {
+                        throw new DirectoryIteratorException(_ex.getCause());
+                    }
+                    return (this._next != null);
+                }
+
+                @Override
+                public Path next()
+                {
+                    if(!hasNext())
+                    {
+                        throw new NoSuchElementException();
+                    }
+                    Path _path = this._next;
+                    this._next = null;
+                    return _path;
+                }
+            };
+        }
+
+        @Override
+        public void close()
+        {
+            if(this._closed)
+            {
+                return;
+            }
+            this._closed = true;
+            if(this._onClose != null)
+            {
+                this._onClose.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.nio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+import org.oracp.sql.OraConnectionPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.pool.OracleDataSource;
+
+/**
+ * Provider for URIs of the form oracp://name/DIR_OBJ/file.dmp so that files
+ * in directory objects can be used with {@linkplain java.nio.file.Files}. A
+ * file system is created for each name with
+ * {@linkplain java.nio.file.FileSystems#newFileSystem(URI, Map)} and these
+ * keys in the environment:
+ * <ul>
+ * <li>url, user, password: JDBC connection of the database.</li>
+ * <li>dataSource: A {@linkplain DataSource} to use instead of the URL.</li>
+ * <li>poolMax: Maximum connections in the pool (default 4).</li>
+ * <li>cacheTtlMs: Time file attributes are cached (default 5000).</li>
+ * </ul>
+ * @author Chad Juliano
+ */
+public class OraFileSystemProvider extends FileSystemProvider
+{
+    private static final Logger              LOG              = LoggerFactory.getLogger(OraFileSystemProvider.class);
+
+    public static final String               SCHEME           = "oracp";
+    public static final String               ENV_URL          = "url";
+    public static final String               ENV_USER         = "user";
+    public static final String               ENV_PASSWORD     = "password";
+    public static final String               ENV_DATA_SOURCE  = "dataSource";
+    public static final String               ENV_POOL_MAX     = "poolMax";
+    public static final String               ENV_CACHE_TTL_MS = "cacheTtlMs";
+
+    private static final int                 DEFAULT_POOL_MAX = 4;
+    private static final long                DEFAULT_CACHE_MS = 5000;
+
+    private final Map<String, OraFileSystem> _fileSystems     = new ConcurrentHashMap<>();
+
+    @Override
+    public String getScheme()
+    {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI _uri, Map<String, ?> _env)
+            throws IOException
+    {
+        String _name = getName(_uri);
+        int _poolMax = (int)getLong(_env, ENV_POOL_MAX, DEFAULT_POOL_MAX);
+        long _cacheMs = getLong(_env, ENV_CACHE_TTL_MS, DEFAULT_CACHE_MS);
+
+        DataSource _ds = (DataSource)_env.get(ENV_DATA_SOURCE);
+        if(_ds == null)
+        {
+            _ds = newDataSource(_env);
+        }
+
+        synchronized(this._fileSystems)
+        {
+            if(this._fileSystems.containsKey(_name))
+            {
+                throw new FileSystemAlreadyExistsException(_name);
+            }
+
+            OraFileSystem _fs = new OraFileSystem(this, _name, new OraConnectionPool(_ds, _poolMax), _cacheMs);
+            this._fileSystems.put(_name, _fs);
+            LOG.debug("New file system: {} (pool={}, cache={}ms)", _name, _poolMax, _cacheMs);
+            return _fs;
+        }
+    }
+
+    private static DataSource newDataSource(Map<String, ?> _env)
+            throws IOException
+    {
+        Object _url = _env.get(ENV_URL);
+        if(_url == null)
+        {
+            throw new IllegalArgumentException("The environment must have a url or a dataSource");
+        }
+
+        try
+        {
+            OracleDataSource _ods = new OracleDataSource();
+            _ods.setURL(_url.toString());
+            if(_env.get(ENV_USER) != null)
+            {
+                _ods.setUser(_env.get(ENV_USER).toString());
+            }
+            if(_env.get(ENV_PASSWORD) != null)
+            {
+                _ods.setPassword(_env.get(ENV_PASSWORD).toString());
+            }
+            return _ods;
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    private static long getLong(Map<String, ?> _env, String _key, long _default)
+    {
+        Object _value = _env.get(_key);
+        return (_value == null) ? _default : Long.parseLong(_value.toString());
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI _uri)
+    {
+        OraFileSystem _fs = this._fileSystems.get(getName(_uri));
+        if(_fs == null)
+        {
+            throw new FileSystemNotFoundException(_uri.toString());
+        }
+        return _fs;
+    }
+
+    /**
+     * Forget a file system after it is closed.
+     * @param _fs
+     */
+    void remove(OraFileSystem _fs)
+    {
+        this._fileSystems.remove(_fs.getName(), _fs);
+    }
+
+    @Override
+    public Path getPath(URI _uri)
+    {
+        OraFileSystem _fs = (OraFileSystem)getFileSystem(_uri);
+        return _fs.getPath(_uri.getPath());
+    }
+
+    private String getName(URI _uri)
+    {
+        if(!SCHEME.equalsIgnoreCase(_uri.getScheme()))
+        {
+            throw new IllegalArgumentException("URI scheme is not " + SCHEME + ": " + _uri);
+        }
+        if(_uri.getAuthority() == null)
+        {
+            throw new IllegalArgumentException("URI has no name: " + _uri);
+        }
+        return _uri.getAuthority();
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path _path, Set<? extends OpenOption> _options,
+            FileAttribute<?>... _attrs)
+            throws IOException
+    {
+        return toOraPath(_path).getFileSystem().newByteChannel(_path, _options);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path _dir, DirectoryStream.Filter<? super Path> _filter)
+            throws IOException
+    {
+        return toOraPath(_dir).getFileSystem().newDirectoryStream(_dir, _filter);
+    }
+
+    @Override
+    public void createDirectory(Path _dir, FileAttribute<?>... _attrs)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("Directory objects are created with CREATE DIRECTORY");
+    }
+
+    @Override
+    public void delete(Path _path)
+            throws IOException
+    {
+        toOraPath(_path).getFileSystem().delete(_path);
+    }
+
+    @Override
+    public void copy(Path _source, Path _target, CopyOption... _options)
+            throws IOException
+    {
+        toOraPath(_target);
+        toOraPath(_source).getFileSystem().copy(_source, _target, _options);
+    }
+
+    @Override
+    public void move(Path _source, Path _target, CopyOption... _options)
+            throws IOException
+    {
+        toOraPath(_target);
+        toOraPath(_source).getFileSystem().move(_source, _target, _options);
+    }
+
+    @Override
+    public boolean isSameFile(Path _path, Path _path2)
+            throws IOException
+    {
+        if(!(_path2 instanceof OraPath))
+        {
+            return false;
+        }
+        return toOraPath(_path).toAbsolutePath().normalize().equals(_path2.toAbsolutePath().normalize());
+    }
+
+    @Override
+    public boolean isHidden(Path _path)
+            throws IOException
+    {
+        return false;
+    }
+
+    @Override
+    public FileStore getFileStore(Path _path)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("Directory objects have no file store");
+    }
+
+    @Override
+    public void checkAccess(Path _path, AccessMode... _modes)
+            throws IOException
+    {
+        toOraPath(_path).getFileSystem().readAttributes(_path);
+        for(AccessMode _mode : _modes)
+        {
+            if(_mode == AccessMode.EXECUTE)
+            {
+                throw new AccessDeniedException(_path.toString());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path _path, Class<V> _type, LinkOption... _options)
+    {
+        OraPath _oraPath = toOraPath(_path);
+        if(_type != BasicFileAttributeView.class)
+        {
+            return null;
+        }
+
+        return (V)new BasicFileAttributeView()
+        {
+            @Override
+            public String name()
+            {
+                return "basic";
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes()
+                    throws IOException
+            {
+                return _oraPath.getFileSystem().readAttributes(_oraPath);
+            }
+
+            @Override
+            public void setTimes(FileTime _lastModifiedTime, FileTime _lastAccessTime, FileTime _createTime)
+                    throws IOException
+            {
+                throw new UnsupportedOperationException("UTL_FILE can't set file times");
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <A extends BasicFileAttributes> A readAttributes(Path _path, Class<A> _type, LinkOption... _options)
+            throws IOException
+    {
+        if(_type != BasicFileAttributes.class)
+        {
+            throw new UnsupportedOperationException("Only basic attributes are supported: " + _type.getName());
+        }
+        return (A)toOraPath(_path).getFileSystem().readAttributes(_path);
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path _path, String _attributes, LinkOption... _options)
+            throws IOException
+    {
+        String _names = _attributes;
+        int _colon = _names.indexOf(':');
+        if(_colon >= 0)
+        {
+            if(!"basic".equals(_names.substring(0, _colon)))
+            {
+                throw new UnsupportedOperationException("Only basic attributes are supported: " + _attributes);
+            }
+            _names = _names.substring(_colon + 1);
+        }
+        return toOraPath(_path).getFileSystem().readAttributes(_path).toMap(_names);
+    }
+
+    @Override
+    public void setAttribute(Path _path, String _attribute, Object _value, LinkOption... _options)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("UTL_FILE can't set file attributes");
+    }
+
+    private static OraPath toOraPath(Path _path)
+    {
+        if(!(_path instanceof OraPath))
+        {
+            throw new ProviderMismatchException("Not an oracp path: " + _path);
+        }
+        return (OraPath)_path;
+    }
+}
@@ -0,0 +1,372 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.nio;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A path in an {@linkplain OraFileSystem}. An absolute path has the form
+ * /DIR_OBJ/file where the first name is a directory object and the second is
+ * a file in it. Relative paths are resolved against the root.
+ * @author Chad Juliano
+ */
+class OraPath implements Path
+{
+    private final OraFileSystem _fs;
+    private final boolean       _absolute;
+    private final String[]      _names;
+
+    /**
+     * Constructor
+     * @param _fs
+     * @param _path Names separated by /.
+     */
+    OraPath(OraFileSystem _fs, String _path)
+    {
+        this(_fs, _path.startsWith("/"), Arrays.stream(_path.split("/"))
+            .filter(_name -> !_name.isEmpty())
+            .toArray(String[]::new));
+    }
+
+    private OraPath(OraFileSystem _fs, boolean _absolute, String[] _names)
+    {
+        this._fs = _fs;
+        this._absolute = _absolute;
+        this._names = _names;
+    }
+
+    /**
+     * Name of the directory object of an absolute normalized path.
+     * @return null for the root.
+     */
+    String getDirectory()
+    {
+        return (this._names.length > 0) ? this._names[0] : null;
+    }
+
+    /**
+     * Name of the file of an absolute normalized path.
+     * @return null for the root or a directory object.
+     */
+    String getFileNameString()
+    {
+        return (this._names.length > 1) ? this._names[1] : null;
+    }
+
+    @Override
+    public OraFileSystem getFileSystem()
+    {
+        return this._fs;
+    }
+
+    @Override
+    public boolean isAbsolute()
+    {
+        return this._absolute;
+    }
+
+    @Override
+    public Path getRoot()
+    {
+        return this._absolute ? new OraPath(this._fs, true, new String[0]) : null;
+    }
+
+    @Override
+    public Path getFileName()
+    {
+        if(this._names.length == 0)
+        {
+            return null;
+        }
+        return new OraPath(this._fs, false, new String[] { this._names[this._names.length - 1] });
+    }
+
+    @Override
+    public Path getParent()
+    {
+        if(this._names.length == 0 || (this._names.length == 1 && !this._absolute))
+        {
+            return null;
+        }
+        return new OraPath(this._fs, this._absolute, Arrays.copyOf(this._names, this._names.length - 1));
+    }
+
+    @Override
+    public int getNameCount()
+    {
+        return this._names.length;
+    }
+
+    @Override
+    public Path getName(int _index)
+    {
+        return subpath(_index, _index + 1);
+    }
+
+    @Override
+    public Path subpath(int _beginIndex, int _endIndex)
+    {
+        if(_beginIndex < 0 || _endIndex > this._names.length || _beginIndex >= _endIndex)
+        {
+            throw new IllegalArgumentException(String.format("Invalid subpath %d-%d of %s", _beginIndex,
+                    _endIndex, this));
+        }
+        return new OraPath(this._fs, false, Arrays.copyOfRange(this._names, _beginIndex, _endIndex));
+    }
+
+    @Override
+    public boolean startsWith(Path _other)
+    {
+        OraPath _path = checkPath(_other);
+        if(_path._absolute != this._absolute || _path._names.length > this._names.length)
+        {
+            return false;
+        }
+        for(int _idx = 0; _idx < _path._names.length; _idx++)
+        {
+            if(!_path._names[_idx].equals(this._names[_idx]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean startsWith(String _other)
+    {
+        return startsWith(this._fs.getPath(_other));
+    }
+
+    @Override
+    public boolean endsWith(Path _other)
+    {
+        OraPath _path = checkPath(_other);
+        if(_path._absolute)
+        {
+            return equals(_path);
+        }
+
+        int _offset = this._names.length - _path._names.length;
+        if(_offset < 0)
+        {
+            return false;
+        }
+        for(int _idx = 0; _idx < _path._names.length; _idx++)
+        {
+            if(!_path._names[_idx].equals(this._names[_offset + _idx]))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean endsWith(String _other)
+    {
+        return endsWith(this._fs.getPath(_other));
+    }
+
+    @Override
+    public Path normalize()
+    {
+        List<String> _result = new ArrayList<>();
+        for(String _name : this._names)
+        {
+            if(".".equals(_name))
+            {
+                continue;
+            }
+            if("..".equals(_name) && !_result.isEmpty() && !"..".equals(_result.get(_result.size() - 1)))
+            {
+                _result.remove(_result.size() - 1);
+                continue;
+            }
+            if("..".equals(_name) && this._absolute)
+            {
+                // there is nothing above the root
+                continue;
+            }
+            _result.add(_name);
+        }
+        return new OraPath(this._fs, this._absolute, _result.toArray(new String[0]));
+    }
+
+    @Override
+    public Path resolve(Path _other)
+    {
+        OraPath _path = checkPath(_other);
+        if(_path._absolute)
+        {
+            return _path;
+        }
+        String[] _result = Arrays.copyOf(this._names, this._names.length + _path._names.length);
+        System.arraycopy(_path._names, 0, _result, this._names.length, _path._names.length);
+        return new OraPath(this._fs, this._absolute, _result);
+    }
+
+    @Override
+    public Path resolve(String _other)
+    {
+        return resolve(this._fs.getPath(_other));
+    }
+
+    @Override
+    public Path resolveSibling(Path _other)
+    {
+        Path _parent = getParent();
+        return (_parent == null) ? _other : _parent.resolve(_other);
+    }
+
+    @Override
+    public Path resolveSibling(String _other)
+    {
+        return resolveSibling(this._fs.getPath(_other));
+    }
+
+    @Override
+    public Path relativize(Path _other)
+    {
+        OraPath _path = checkPath(_other);
+        if(_path._absolute != this._absolute)
+        {
+            throw new IllegalArgumentException("Paths must both be absolute or relative: " + _other);
+        }
+
+        int _common = 0;
+        while(_common < this._names.length && _common < _path._names.length
+                && this._names[_common].equals(_path._names[_common]))
+        {
+            _common++;
+        }
+
+        List<String> _result = new ArrayList<>();
+        for(int _idx = _common; _idx < this._names.length; _idx++)
+        {
+            _result.add("..");
+        }
+        _result.addAll(Arrays.asList(_path._names).subList(_common, _path._names.length));
+        return new OraPath(this._fs, false, _result.toArray(new String[0]));
+    }
+
+    @Override
+    public URI toUri()
+    {
+        try
+        {
+            return new URI(OraFileSystemProvider.SCHEME, this._fs.getName(), toAbsolutePath().toString(), null,
+                    null);
+        }
+        catch(URISyntaxException _ex)
+        {
+            throw new IllegalStateException(_ex.getMessage(), _ex);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath()
+    {
+        return this._absolute ? this : new OraPath(this._fs, true, this._names);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... _options)
+            throws IOException
+    {
+        Path _path = toAbsolutePath().normalize();
+        this._fs.provider().checkAccess(_path);
+        return _path;
+    }
+
+    @Override
+    public File toFile()
+    {
+        throw new UnsupportedOperationException("Not a local file: " + this);
+    }
+
+    @Override
+    public WatchKey register(WatchService _watcher, WatchEvent.Kind<?>[] _events, WatchEvent.Modifier... _modifiers)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("Directory objects can't be watched");
+    }
+
+    @Override
+    public WatchKey register(WatchService _watcher, WatchEvent.Kind<?>... _events)
+            throws IOException
+    {
+        throw new UnsupportedOperationException("Directory objects can't be watched");
+    }
+
+    @Override
+    public Iterator<Path> iterator()
+    {
+        List<Path> _result = new ArrayList<>();
+        for(int _idx = 0; _idx < this._names.length; _idx++)
+        {
+            _result.add(getName(_idx));
+        }
+        return _result.iterator();
+    }
+
+    @Override
+    public int compareTo(Path _other)
+    {
+        return toString().compareTo(checkPath(_other).toString());
+    }
+
+    @Override
+    public boolean equals(Object _other)
+    {
+        if(!(_other instanceof OraPath))
+        {
+            return false;
+        }
+        OraPath _path = (OraPath)_other;
+        return (_path._fs == this._fs && _path.toString().equals(toString()));
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return toString().hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return (this._absolute ? "/" : "") + String.join("/", this._names);
+    }
+
+    private static OraPath checkPath(Path _path)
+    {
+        if(!(_path instanceof OraPath))
+        {
+            throw new ProviderMismatchException("Not an oracp path: " + _path);
+        }
+        return (OraPath)_path;
+    }
+}
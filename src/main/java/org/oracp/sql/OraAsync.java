@@ -0,0 +1,145 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs transfers in the background for the async methods of
+ * {@linkplain OraFile}. The default executor starts a virtual thread for
+ * each transfer on Java 21 or later. It is loaded by name so that the rest of
+ * the program still runs on Java 8, where a cached pool of daemon threads is
+ * used instead.
+ * @author Chad Juliano
+ */
+final class OraAsync
+{
+    private static final Logger          LOG      = LoggerFactory.getLogger(OraAsync.class);
+    private static final ExecutorService EXECUTOR = load();
+
+    /**
+     * A transfer that reports its progress to a callback.
+     */
+    interface Task
+    {
+        void run(OraFile.Progress _progress)
+                throws Exception;
+    }
+
+    private OraAsync()
+    {
+    }
+
+    private static ExecutorService load()
+    {
+        try
+        {
+            ExecutorService _executor = (ExecutorService)Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            LOG.debug("Async transfers use virtual threads");
+            return _executor;
+        }
+        catch(ReflectiveOperationException | LinkageError _ex)
+        {
+            LOG.debug("Virtual threads are not available: {}", _ex.toString());
+        }
+
+        AtomicInteger _threadNum = new AtomicInteger();
+        return Executors.newCachedThreadPool(_runnable ->
+        {
+            Thread _thread = new Thread(_runnable, "oracp-async-" + _threadNum.incrementAndGet());
+            _thread.setDaemon(true);
+            return _thread;
+        });
+    }
+
+    /**
+     * The executor used when the caller does not give one.
+     * @return
+     */
+    static Executor getDefaultExecutor()
+    {
+        return EXECUTOR;
+    }
+
+    /**
+     * Start a transfer. Cancelling the returned future stops the transfer at
+     * its next round trip, after which its streams are closed as if it had
+     * failed.
+     * @param _file The file being transferred.
+     * @param _task
+     * @param _progress Optional callback routine for progress.
+     * @param _executor
+     * @return
+     */
+    static CompletableFuture<Void> run(OraFile _file, Task _task, OraFile.Progress _progress, Executor _executor)
+    {
+        CompletableFuture<Void> _future = new CompletableFuture<>();
+        OraFile.Progress _checked = new OraFile.Progress()
+        {
+            @Override
+            public void update(long _partBytes, long _totalBytes)
+            {
+                if(_progress != null)
+                {
+                    _progress.update(_partBytes, _totalBytes);
+                }
+            }
+
+            @Override
+            public boolean isCancelled()
+            {
+                return _future.isCancelled() || (_progress != null && _progress.isCancelled());
+            }
+        };
+
+        try
+        {
+            _executor.execute(() ->
+            {
+                if(_future.isDone())
+                {
+                    // cancelled before it started
+                    return;
+                }
+                try
+                {
+                    _task.run(_checked);
+                    _future.complete(null);
+                }
+                catch(CancellationException _ex)
+                {
+                    LOG.debug("Transfer cancelled: {}", _file);
+                    _future.completeExceptionally(_ex);
+                }
+                catch(Throwable _ex)
+                {
+                    _future.completeExceptionally(_ex);
+                }
+            });
+        }
+        catch(RejectedExecutionException _ex)
+        {
+            _future.completeExceptionally(_ex);
+        }
+        return _future;
+    }
+}
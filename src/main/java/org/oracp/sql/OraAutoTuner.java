@@ -0,0 +1,258 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Chooses the number of 32 KB slices moved in each round trip and the number
+ * of parallel streams while a transfer is running. The throughput is sampled
+ * in windows and each setting is raised in additive steps for as long as the
+ * throughput improves. When a step does not help the setting goes back to
+ * the last good value and the next setting is probed. If the throughput later
+ * drops sharply the number of streams is halved and probed again.
+ * <p>
+ * The settings are read by the workers of {@linkplain OraParallelTransfer}
+ * before each segment.
+ * @author Chad Juliano
+ */
+public class OraAutoTuner
+{
+    private static final Logger LOG            = LoggerFactory.getLogger(OraAutoTuner.class);
+
+    private static final long   MIN_WINDOW_MS  = 1000;
+    private static final int    RTT_SAMPLES    = 5;
+
+    // a window must be this much faster for a step to be kept.
+    private static final double IMPROVE_RATIO  = 1.05;
+
+    // a settled transfer that falls below this fraction of its best backs off.
+    private static final double DROP_RATIO     = 0.75;
+
+    private static final int    SLICE_STEP     = 8;
+    private static final int    MAX_SLICES     = 64;
+
+    private enum Phase
+    {
+        SLICES,
+        STREAMS,
+        SETTLED;
+    }
+
+    private final int           _maxStreams;
+    private volatile int        _slices;
+    private volatile int        _streams;
+    private long                _windowMs      = MIN_WINDOW_MS;
+    private Phase               _phase         = Phase.SLICES;
+    private double              _bestRate      = 0;
+    private int                 _bestSlices;
+    private int                 _bestStreams;
+    private long                _lastBytes     = 0;
+    private long                _lastTime      = 0;
+    private boolean             _warm          = false;
+
+    /**
+     * Constructor
+     * @param _slices Initial number of 32 KB slices per round trip.
+     * @param _streams Initial number of streams.
+     * @param _maxStreams Upper limit on the number of streams.
+     */
+    public OraAutoTuner(int _slices, int _streams, int _maxStreams)
+    {
+        this._maxStreams = Math.max(1, _maxStreams);
+        this._slices = Math.max(1, Math.min(_slices, MAX_SLICES));
+        this._streams = Math.max(1, Math.min(_streams, this._maxStreams));
+        this._bestSlices = this._slices;
+        this._bestStreams = this._streams;
+    }
+
+    /**
+     * Time a few empty round trips and size the sample window so that it
+     * covers many round trips on slow links.
+     * @param _dbc
+     * @return The shortest round trip in milliseconds.
+     * @throws SQLException
+     */
+    public double measureLatency(Connection _dbc)
+            throws SQLException
+    {
+        long _minNanos = Long.MAX_VALUE;
+        try(CallableStatement _cs = _dbc.prepareCall("BEGIN NULL; END;"))
+        {
+            for(int _idx = 0; _idx < RTT_SAMPLES; _idx++)
+            {
+                long _start = System.nanoTime();
+                _cs.execute();
+                _minNanos = Math.min(_minNanos, System.nanoTime() - _start);
+            }
+        }
+
+        double _rttMs = _minNanos / 1000000.0;
+        this._windowMs = Math.max(MIN_WINDOW_MS, (long)(_rttMs * 50));
+        LOG.info("Round trip latency: {} ms (sample window {} ms)", String.format("%.2f", _rttMs),
+                this._windowMs);
+        return _rttMs;
+    }
+
+    /**
+     * Start the first sample window.
+     * @param _nowMs
+     */
+    public synchronized void start(long _nowMs)
+    {
+        this._lastTime = _nowMs;
+        this._lastBytes = 0;
+        this._warm = false;
+    }
+
+    /**
+     * Record the total bytes transferred so far. When a sample window has
+     * passed the settings are adjusted.
+     * @param _bytes Total bytes transferred.
+     * @param _nowMs Current time.
+     * @return true if the window was complete.
+     */
+    public synchronized boolean sample(long _bytes, long _nowMs)
+    {
+        long _elapsed = _nowMs - this._lastTime;
+        if(_elapsed < this._windowMs)
+        {
+            return false;
+        }
+
+        double _rate = (_bytes - this._lastBytes) * 1000.0 / _elapsed;
+        this._lastBytes = _bytes;
+        this._lastTime = _nowMs;
+
+        if(!this._warm)
+        {
+            // the first window includes opening the connections and files.
+            this._warm = true;
+            return true;
+        }
+
+        adjust(_rate);
+        return true;
+    }
+
+    private void adjust(double _rate)
+    {
+        LOG.debug("Auto-tune sample: slices={}, streams={}, {} KB/s", this._slices, this._streams,
+                (long)(_rate / 1024));
+
+        switch(this._phase)
+        {
+            case SLICES:
+                if(_rate > this._bestRate * IMPROVE_RATIO)
+                {
+                    keepBest(_rate);
+                    if(this._slices < MAX_SLICES)
+                    {
+                        this._slices = Math.min(MAX_SLICES, this._slices + SLICE_STEP);
+                        break;
+                    }
+                }
+                this._slices = this._bestSlices;
+                this._phase = Phase.STREAMS;
+                stepStreams();
+                break;
+
+            case STREAMS:
+                if(_rate > this._bestRate * IMPROVE_RATIO)
+                {
+                    keepBest(_rate);
+                    stepStreams();
+                    break;
+                }
+                this._streams = this._bestStreams;
+                settle();
+                break;
+
+            case SETTLED:
+                if(_rate < this._bestRate * DROP_RATIO && this._streams > 1)
+                {
+                    this._streams = Math.max(1, this._streams / 2);
+                    LOG.info("Throughput dropped to {} KB/s: reducing streams to {}", (long)(_rate / 1024),
+                            this._streams);
+                    this._bestRate = 0;
+                    this._bestStreams = this._streams;
+                    this._phase = Phase.STREAMS;
+                }
+                break;
+        }
+    }
+
+    private void keepBest(double _rate)
+    {
+        this._bestRate = _rate;
+        this._bestSlices = this._slices;
+        this._bestStreams = this._streams;
+    }
+
+    private void stepStreams()
+    {
+        if(this._streams >= this._maxStreams)
+        {
+            settle();
+            return;
+        }
+        this._streams++;
+    }
+
+    private void settle()
+    {
+        this._phase = Phase.SETTLED;
+        LOG.info("Auto-tune settled: streams={}, slices={} ({} KB/s)", this._streams, this._slices,
+                (long)(this._bestRate / 1024));
+    }
+
+    /**
+     * Number of 32 KB slices to move in each round trip.
+     * @return
+     */
+    public int getSlices()
+    {
+        return this._slices;
+    }
+
+    /**
+     * Number of streams that should be running.
+     * @return
+     */
+    public int getStreams()
+    {
+        return this._streams;
+    }
+
+    /**
+     * Upper limit on the number of streams.
+     * @return
+     */
+    public int getMaxStreams()
+    {
+        return this._maxStreams;
+    }
+
+    /**
+     * True when the probing has finished.
+     * @return
+     */
+    public synchronized boolean isSettled()
+    {
+        return this._phase == Phase.SETTLED;
+    }
+}
@@ -0,0 +1,216 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.OracleBfile;
+import oracle.jdbc.OraclePreparedStatement;
+import oracle.jdbc.OracleResultSet;
+
+/**
+ * This class reads files contained in directory objects through a
+ * <a href="https://docs.oracle.com/database/121/SQLRF/functions020.htm">BFILENAME</a>
+ * locator. LOB reads are not limited to the 32 KB of UTL_FILE.GET_RAW so each
+ * round trip can return a much larger piece of the file.
+ * @see OraFile
+ * @author Chad Juliano
+ */
+public class OraBfileInputStream extends InputStream
+{
+    private static final Logger     LOG       = LoggerFactory.getLogger(OraBfileInputStream.class);
+
+    // number of bytes requested in each LOB read.
+    static final int                READ_SIZE = 1024 * 1024;
+
+    private final OraFile           _file;
+    private final OraclePreparedStatement _stmt;
+    private final OracleBfile       _bfile;
+
+    // data returned by the last LOB read that has not been read yet.
+    private final byte[]            _readBuf  = new byte[READ_SIZE];
+    private int                     _readPos  = 0;
+    private int                     _readLen  = 0;
+
+    private long                    _filePos  = 0;
+
+    /**
+     * Constructor.
+     * @param _file A file contained within an Oracle Directory object.
+     * @throws SQLException
+     */
+    public OraBfileInputStream(OraFile _file) throws SQLException
+    {
+        this._file = _file;
+        Connection _dbc = _file.getConnection();
+
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("select BFILENAME(?, ?) from dual ");
+
+        OraMetrics.get().recordPrepare();
+        this._stmt = (OraclePreparedStatement)_dbc.prepareStatement(_sb.toString());
+        try
+        {
+            // return the start of the file together with the locator
+            this._stmt.setLobPrefetchSize(READ_SIZE);
+            this._stmt.setString(1, _file.getDirectory());
+            this._stmt.setString(2, _file.getFileName());
+            try(OracleResultSet _rSet = (OracleResultSet)OraMetrics.executeQuery(OraMetrics.Call.OPEN, this._stmt))
+            {
+                if(!_rSet.next())
+                {
+                    throw new SQLException("BFILENAME returned no rows: " + _file.getFileName());
+                }
+
+                // the locator stays valid after the result set is closed.
+                this._bfile = _rSet.getBFILE(1);
+            }
+
+            LOG.debug("BFILE.openFile(dir={}, file={})", _file.getDirectory(), _file.getFileName());
+            this._bfile.openFile();
+        }
+        catch(SQLException _ex)
+        {
+            this._stmt.close();
+            throw _ex;
+        }
+    }
+
+    @Override
+    public int available()
+            throws IOException
+    {
+        return (int)Math.min(Integer.MAX_VALUE, remaining());
+    }
+
+    /**
+     * Number of bytes between the read position and the end of the file.
+     * @return
+     */
+    public long remaining()
+    {
+        return _file.length() - _filePos;
+    }
+
+    @Override
+    public int read()
+            throws IOException
+    {
+        byte[] _byte = new byte[1];
+        if(read(_byte, 0, 1) < 0)
+        {
+            return -1;
+        }
+        return _byte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] _buf)
+            throws IOException
+    {
+        return read(_buf, 0, _buf.length);
+    }
+
+    @Override
+    public int read(byte[] _buf, int _offset, int _length)
+            throws IOException
+    {
+        if(_readPos >= _readLen)
+        {
+            try
+            {
+                if(!lobRead())
+                {
+                    return -1;
+                }
+            }
+            catch(SQLException _ex)
+            {
+                throw new IOException(_ex.getMessage(), _ex);
+            }
+        }
+
+        int _numRead = Math.min(_length, _readLen - _readPos);
+        System.arraycopy(_readBuf, _readPos, _buf, _offset, _numRead);
+        _readPos += _numRead;
+        _filePos += _numRead;
+        return _numRead;
+    }
+
+    /**
+     * Move the read position of the stream.
+     * @param _pos Absolute byte offset within the file.
+     */
+    public void seek(long _pos)
+    {
+        _filePos = _pos;
+        _readPos = 0;
+        _readLen = 0;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try
+        {
+            try
+            {
+                LOG.debug("BFILE.closeFile(dir={}, file={})", _file.getDirectory(), _file.getFileName());
+                _bfile.closeFile();
+            }
+            finally
+            {
+                _stmt.close();
+            }
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    /**
+     * Read the next piece of the file from the BFILE locator.
+     * @return false if we are at the end of the file.
+     * @throws SQLException
+     */
+    private boolean lobRead()
+            throws SQLException
+    {
+        _readPos = 0;
+        _readLen = 0;
+
+        if(_filePos >= _file.length())
+        {
+            // we are at the end
+            return false;
+        }
+
+        int _length = (int)Math.min(READ_SIZE, _file.length() - _filePos);
+
+        // LOB offsets start at 1
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        int _numRead = _bfile.getBytes(_filePos + 1, _length, _readBuf);
+        OraMetrics.get().record(OraMetrics.Call.READ, System.nanoTime() - _start, Math.max(_numRead, 0));
+        OraEvents.commitCall(_event, "BFILE.GETBYTES", this._file, _filePos, Math.max(_numRead, 0));
+        _readLen = Math.max(_numRead, 0);
+        return (_readLen > 0);
+    }
+}
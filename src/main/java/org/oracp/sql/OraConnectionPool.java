@@ -0,0 +1,427 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.OracleConnection;
+
+/**
+ * A small pool of physical connections that is shared by the main task and
+ * the parallel and batch workers. Connections are opened ahead of time so the
+ * TCP, TNS and authentication handshakes are done before the transfer starts,
+ * and each physical connection keeps its statement cache for the life of the
+ * pool.
+ * <p>
+ * The connections returned by {@link #getConnection()} are proxies. Closing
+ * one returns the physical connection to the pool.
+ * @author Chad Juliano
+ */
+public class OraConnectionPool implements DataSource, AutoCloseable
+{
+    private static final org.slf4j.Logger LOG              = LoggerFactory.getLogger(OraConnectionPool.class);
+
+    // idle connections older than this are checked before they are handed out.
+    private static final long             VALIDATE_IDLE_MS = 10 * 1000;
+    private static final int              VALIDATE_TIMEOUT = 5;
+    private static final long             WAIT_TIMEOUT_SEC = 300;
+
+    private final DataSource              _ds;
+    private final int                     _maxSize;
+    private final Semaphore               _permits;
+    private final LinkedBlockingDeque<PooledConnection> _idle = new LinkedBlockingDeque<>();
+    private volatile boolean              _closed          = false;
+    private WarmUp                        _warmUp          = null;
+
+    /**
+     * Called once for each new physical connection.
+     */
+    public interface WarmUp
+    {
+        /**
+         * @param _dbc A new physical connection.
+         * @throws SQLException
+         */
+        void prepare(Connection _dbc)
+                throws SQLException;
+    }
+
+    /**
+     * A physical connection and the time it was returned to the pool.
+     */
+    private static class PooledConnection
+    {
+        private final OracleConnection _dbc;
+        private long                   _idleSince;
+
+        private PooledConnection(OracleConnection _dbc)
+        {
+            this._dbc = _dbc;
+            this._idleSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Constructor
+     * @param _ds Source of physical connections.
+     * @param _maxSize Maximum number of connections open at the same time or 0
+     *            for no limit.
+     */
+    public OraConnectionPool(DataSource _ds, int _maxSize)
+    {
+        this._ds = _ds;
+        this._maxSize = (_maxSize > 0) ? _maxSize : Integer.MAX_VALUE;
+        this._permits = new Semaphore(this._maxSize, true);
+    }
+
+    /**
+     * Set a routine that is called for each new connection, for example to
+     * prime the statement cache.
+     * @param _warmUp
+     */
+    public void setWarmUp(WarmUp _warmUp)
+    {
+        this._warmUp = _warmUp;
+    }
+
+    /**
+     * Open connections until there are at least the given number idle. The
+     * connections are opened concurrently so that their handshakes overlap.
+     * @param _minIdle
+     * @throws SQLException
+     */
+    public synchronized void warm(int _minIdle)
+            throws SQLException
+    {
+        int _count = Math.min(_minIdle, this._maxSize) - this._idle.size();
+        if(_count <= 0)
+        {
+            return;
+        }
+
+        LOG.debug("Opening {} pooled connections", _count);
+        ExecutorService _pool = Executors.newFixedThreadPool(_count);
+        try
+        {
+            List<Future<PooledConnection>> _futures = new ArrayList<>();
+            for(int _idx = 0; _idx < _count; _idx++)
+            {
+                _futures.add(_pool.submit(() -> open()));
+            }
+
+            // keep the connections that opened even if some of them failed.
+            Throwable _error = null;
+            for(Future<PooledConnection> _future : _futures)
+            {
+                try
+                {
+                    this._idle.add(_future.get());
+                }
+                catch(ExecutionException _ex)
+                {
+                    _error = (_error != null) ? _error : _ex.getCause();
+                }
+            }
+
+            if(_error != null)
+            {
+                throw (_error instanceof SQLException) ? (SQLException)_error
+                        : new SQLException(_error.getMessage(), _error);
+            }
+        }
+        catch(InterruptedException _ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while opening connections", _ex);
+        }
+        finally
+        {
+            _pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Number of connections waiting in the pool.
+     * @return
+     */
+    public int getIdleCount()
+    {
+        return this._idle.size();
+    }
+
+    @Override
+    public Connection getConnection()
+            throws SQLException
+    {
+        if(this._closed)
+        {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try
+        {
+            if(!this._permits.tryAcquire(WAIT_TIMEOUT_SEC, TimeUnit.SECONDS))
+            {
+                throw new SQLException("Timed out waiting for a connection from the pool (max " + this._maxSize
+                        + ")");
+            }
+        }
+        catch(InterruptedException _ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", _ex);
+        }
+
+        try
+        {
+            PooledConnection _pooled;
+            while((_pooled = this._idle.pollFirst()) != null)
+            {
+                if(isValid(_pooled))
+                {
+                    return wrap(_pooled);
+                }
+                closeQuietly(_pooled);
+            }
+            return wrap(open());
+        }
+        catch(SQLException | RuntimeException _ex)
+        {
+            this._permits.release();
+            throw _ex;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String _user, String _password)
+            throws SQLException
+    {
+        throw new SQLFeatureNotSupportedException("Pooled connections use the credentials of the data source");
+    }
+
+    /**
+     * Close all the idle connections. Connections that are in use are closed
+     * when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        this._closed = true;
+        PooledConnection _pooled;
+        while((_pooled = this._idle.pollFirst()) != null)
+        {
+            closeQuietly(_pooled);
+        }
+    }
+
+    private PooledConnection open()
+            throws SQLException
+    {
+        OracleConnection _dbc = (OracleConnection)this._ds.getConnection();
+        try
+        {
+            if(this._warmUp != null)
+            {
+                this._warmUp.prepare(_dbc);
+            }
+        }
+        catch(SQLException _ex)
+        {
+            _dbc.close();
+            throw _ex;
+        }
+        return new PooledConnection(_dbc);
+    }
+
+    /**
+     * Check a connection that has been idle for a while before it is reused.
+     */
+    private static boolean isValid(PooledConnection _pooled)
+    {
+        try
+        {
+            if(_pooled._dbc.isClosed())
+            {
+                return false;
+            }
+
+            long _idleMs = System.currentTimeMillis() - _pooled._idleSince;
+            if(_idleMs > VALIDATE_IDLE_MS && !_pooled._dbc.isValid(VALIDATE_TIMEOUT))
+            {
+                LOG.debug("Discarding invalid connection after {} ms idle", _idleMs);
+                return false;
+            }
+            return true;
+        }
+        catch(SQLException _ex)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Return a proxy that gives the physical connection back to the pool
+     * when it is closed.
+     */
+    private Connection wrap(PooledConnection _pooled)
+    {
+        final boolean[] _released = new boolean[1];
+        return (Connection)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { OracleConnection.class },
+                (_proxy, _method, _args) ->
+                {
+                    switch(_method.getName())
+                    {
+                        case "close":
+                            synchronized(_released)
+                            {
+                                if(!_released[0])
+                                {
+                                    _released[0] = true;
+                                    release(_pooled);
+                                }
+                            }
+                            return null;
+                        case "isClosed":
+                            return _released[0] || _pooled._dbc.isClosed();
+                        default:
+                            break;
+                    }
+
+                    if(_released[0])
+                    {
+                        throw new SQLException("Connection has been returned to the pool");
+                    }
+
+                    try
+                    {
+                        return _method.invoke(_pooled._dbc, _args);
+                    }
+                    catch(InvocationTargetException _ex)
+                    {
+                        throw _ex.getCause();
+                    }
+                });
+    }
+
+    private void release(PooledConnection _pooled)
+    {
+        try
+        {
+            if(this._closed || _pooled._dbc.isClosed())
+            {
+                closeQuietly(_pooled);
+                return;
+            }
+
+            if(!_pooled._dbc.getAutoCommit())
+            {
+                _pooled._dbc.rollback();
+            }
+            _pooled._idleSince = System.currentTimeMillis();
+            this._idle.addFirst(_pooled);
+        }
+        catch(SQLException _ex)
+        {
+            LOG.debug("Discarding connection: {}", _ex.getMessage());
+            closeQuietly(_pooled);
+        }
+        finally
+        {
+            this._permits.release();
+        }
+    }
+
+    private static void closeQuietly(PooledConnection _pooled)
+    {
+        try
+        {
+            _pooled._dbc.close();
+        }
+        catch(SQLException _ex)
+        {
+            LOG.debug("Could not close connection: {}", _ex.getMessage());
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter()
+            throws SQLException
+    {
+        return this._ds.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter _out)
+            throws SQLException
+    {
+        this._ds.setLogWriter(_out);
+    }
+
+    @Override
+    public void setLoginTimeout(int _seconds)
+            throws SQLException
+    {
+        this._ds.setLoginTimeout(_seconds);
+    }
+
+    @Override
+    public int getLoginTimeout()
+            throws SQLException
+    {
+        return this._ds.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger()
+            throws SQLFeatureNotSupportedException
+    {
+        return this._ds.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> _iface)
+            throws SQLException
+    {
+        if(_iface.isInstance(this))
+        {
+            return _iface.cast(this);
+        }
+        return this._ds.unwrap(_iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> _iface)
+            throws SQLException
+    {
+        return _iface.isInstance(this) || this._ds.isWrapperFor(_iface);
+    }
+}
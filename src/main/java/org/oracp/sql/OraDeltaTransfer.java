@@ -0,0 +1,549 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.OracleCallableStatement;
+
+/**
+ * Transfers only the blocks of a file that differ between the local copy and
+ * the file in the directory object. The database computes an MD5 hash of each
+ * block with DBMS_CRYPTO.HASH and the client compares them with the hashes of
+ * the local file at the same offsets.
+ * <p>
+ * For a GET a new local file is written from the unchanged blocks of the old
+ * one and the changed blocks read from the database. It is checked against
+ * the block hashes and then renamed over the old file. For a PUT of a file that has only grown the new data is appended. In
+ * other cases a new file is assembled in the database from the unchanged
+ * blocks of the old file and the changed blocks sent by the client, and then
+ * renamed over the old file.
+ * @see OraFile
+ * @author Chad Juliano
+ */
+public class OraDeltaTransfer
+{
+    private static final Logger LOG               = LoggerFactory.getLogger(OraDeltaTransfer.class);
+    public static final int     DEFAULT_BLOCK     = 1024 * 1024;
+
+    // number of 16 byte hashes returned in each round trip.
+    private static final int    HASHES_PER_CALL   = 1024;
+    private static final int    HASH_LEN          = 16;
+
+    private static final String TEMP_SUFFIX       = ".oracp-tmp";
+    private static final long   PROGRESS_DELAY_MS = 1000;
+
+    private final int           _blockSize;
+    private long                _lastTime         = 0;
+
+    /**
+     * Constructor
+     * @param _blockSize Size of the blocks that are compared.
+     */
+    public OraDeltaTransfer(int _blockSize)
+    {
+        this._blockSize = _blockSize;
+    }
+
+    /**
+     * Update a local file so that it matches a file in the directory object.
+     * The result is written to a temporary file next to the local copy and
+     * its blocks are checked against the hashes of the remote file before it
+     * replaces the local copy. If the remote file changed during the transfer
+     * the local copy is left as it was.
+     * @param _source File in the directory object.
+     * @param _localFile Existing local copy that is replaced.
+     * @param _progress Optional callback for the bytes that are transferred.
+     * @throws Exception
+     */
+    public void getContents(OraFile _source, File _localFile, OraFile.Progress _progress)
+            throws Exception
+    {
+        Object _event = OraEvents.beginTransfer();
+        final long _fileSize = _source.length();
+        List<byte[]> _remoteHashes = readHashes(_source);
+        boolean[] _matched = compareLocal(_localFile, _fileSize, _remoteHashes);
+
+        List<long[]> _ranges = changedRanges(_matched, _fileSize);
+        long _changedBytes = _ranges.stream().mapToLong(_range -> _range[1] - _range[0]).sum();
+        LOG.info("Delta: {} of {} blocks changed ({} KB to transfer)", countChanged(_matched), _matched.length,
+                _changedBytes / 1024);
+
+        File _tempFile = new File(_localFile.getPath() + TEMP_SUFFIX);
+        long _numTotal = 0;
+        try
+        {
+            _numTotal = patch(_source, _localFile, _tempFile, _ranges, _fileSize, _changedBytes, _progress);
+
+            // the remote file could have changed after the hashes were read.
+            boolean[] _verified = compareLocal(_tempFile, _fileSize, _remoteHashes);
+            if(countChanged(_verified) > 0)
+            {
+                throw new IOException(String.format("%d blocks do not match after the transfer: %s",
+                        countChanged(_verified), _source));
+            }
+
+            Files.move(_tempFile.toPath(), _localFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(Exception _ex)
+        {
+            Files.deleteIfExists(_tempFile.toPath());
+            throw _ex;
+        }
+        OraEvents.commitTransfer(_event, "get", _source, _numTotal, 1);
+    }
+
+    /**
+     * Write a new local file that has the unchanged blocks copied from the
+     * old local file and the changed ranges read from the remote file.
+     * @return Number of bytes read from the remote file.
+     */
+    private long patch(OraFile _source, File _localFile, File _tempFile, List<long[]> _ranges, long _fileSize,
+            long _changedBytes, OraFile.Progress _progress)
+            throws Exception
+    {
+        final byte[] _buf = new byte[OraFile.MAX_SQL_BUF];
+        long _numTotal = 0;
+        this._lastTime = 0;
+
+        try(FileChannel _channel = FileChannel.open(_tempFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE))
+        {
+            long _pos = 0;
+            if(!_ranges.isEmpty())
+            {
+                try(InputStream _is = _source.openInputStream())
+                {
+                    for(long[] _range : _ranges)
+                    {
+                        copyLocal(_localFile, _channel, _pos, _range[0]);
+                        OraFile.seek(_is, _range[0]);
+
+                        _pos = _range[0];
+                        while(_pos < _range[1])
+                        {
+                            int _len = (int)Math.min(_buf.length, _range[1] - _pos);
+                            int _numRead = _is.read(_buf, 0, _len);
+                            if(_numRead <= 0)
+                            {
+                                throw new IOException(String.format("Unexpected end of file at %d: %s", _pos,
+                                        _source));
+                            }
+
+                            long _ioStart = System.nanoTime();
+                            ByteBuffer _bb = ByteBuffer.wrap(_buf, 0, _numRead);
+                            while(_bb.hasRemaining())
+                            {
+                                _pos += _channel.write(_bb, _pos);
+                            }
+                            OraMetrics.get().recordLocal(System.nanoTime() - _ioStart, _numRead);
+
+                            _numTotal += _numRead;
+                            updateProgress(_progress, _numTotal, _changedBytes, false);
+                        }
+                    }
+                }
+            }
+            copyLocal(_localFile, _channel, _pos, _fileSize);
+            updateProgress(_progress, _numTotal, _changedBytes, true);
+        }
+        return _numTotal;
+    }
+
+    /**
+     * Copy a range of unchanged blocks from the old local file to the same
+     * offset of the new one.
+     */
+    private static void copyLocal(File _localFile, FileChannel _dest, long _start, long _end)
+            throws IOException
+    {
+        if(_start >= _end)
+        {
+            return;
+        }
+
+        long _ioStart = System.nanoTime();
+        try(FileChannel _src = FileChannel.open(_localFile.toPath(), StandardOpenOption.READ))
+        {
+            long _pos = _start;
+            _dest.position(_start);
+            while(_pos < _end)
+            {
+                long _numCopied = _src.transferTo(_pos, _end - _pos, _dest);
+                if(_numCopied <= 0)
+                {
+                    throw new IOException("Unexpected end of file at " + _pos + ": " + _localFile);
+                }
+                _pos += _numCopied;
+            }
+        }
+        OraMetrics.get().recordLocal(System.nanoTime() - _ioStart, _end - _start);
+    }
+
+    /**
+     * Update a file in the directory object so that it matches a local file.
+     * @param _localFile Source file.
+     * @param _dest Existing file in the directory object.
+     * @param _progress Optional callback for the bytes that are transferred.
+     * @throws Exception
+     */
+    public void putContents(File _localFile, OraFile _dest, OraFile.Progress _progress)
+            throws Exception
+    {
+        final long _fileSize = _localFile.length();
+        final long _destSize = _dest.length();
+        List<byte[]> _remoteHashes = readHashes(_dest);
+        boolean[] _matched = compareLocal(_localFile, _destSize, _remoteHashes);
+        int _numChanged = countChanged(_matched);
+
+        if(_numChanged == 0 && _fileSize >= _destSize)
+        {
+            // the remote file is a prefix of the local file so only the new data is sent.
+            LOG.info("Delta: {} blocks unchanged ({} KB to append)", _matched.length,
+                    (_fileSize - _destSize) / 1024);
+            if(_fileSize > _destSize)
+            {
+                try(InputStream _is = new FileInputStream(_localFile))
+                {
+                    _dest.putContents(_is, _destSize, _progress);
+                }
+            }
+            return;
+        }
+
+        LOG.info("Delta: {} of {} blocks changed", _numChanged, _matched.length);
+
+        Object _event = OraEvents.beginTransfer();
+        OraFile _temp = new OraFile(_dest.getConnection(), _dest.getDirectory(),
+                _dest.getFileName() + TEMP_SUFFIX);
+        try
+        {
+            long _numSent = assemble(_localFile, _dest, _temp, _matched, _progress);
+            _temp.rename(_dest.getDirectory(), _dest.getFileName(), true);
+            OraEvents.commitTransfer(_event, "put", _dest, _numSent, 1);
+        }
+        catch(Exception _ex)
+        {
+            removeQuietly(_temp);
+            throw _ex;
+        }
+    }
+
+    /**
+     * Write a new file that has the unchanged blocks copied from the old file
+     * inside the database and the changed blocks sent from the local file.
+     * @return Number of bytes sent.
+     */
+    private long assemble(File _localFile, OraFile _dest, OraFile _temp, boolean[] _matched,
+            OraFile.Progress _progress)
+            throws Exception
+    {
+        final long _fileSize = _localFile.length();
+        final byte[] _buf = new byte[OraFile.MAX_SQL_BUF];
+        long _numTotal = 0;
+        this._lastTime = 0;
+
+        try(InputStream _is = new FileInputStream(_localFile);
+                OraOutputStream _os = new OraOutputStream(_temp, _dest.getPieceSize(), _dest.isCompress()))
+        {
+            long _pos = 0;
+            int _block = 0;
+            while(_pos < _fileSize)
+            {
+                if(_block < _matched.length && _matched[_block])
+                {
+                    // copy the run of unchanged blocks inside the database.
+                    int _runEnd = _block;
+                    while(_runEnd < _matched.length && _matched[_runEnd])
+                    {
+                        _runEnd++;
+                    }
+
+                    long _runLen = Math.min((long)(_runEnd - _block) * this._blockSize, _dest.length() - _pos);
+                    _os.flush();
+                    _temp.oraAppendRange(_dest, _pos, _runLen);
+                    skipFully(_is, _runLen);
+                    _pos += _runLen;
+                    _block = _runEnd;
+                    continue;
+                }
+
+                // send the changed block.
+                long _blockEnd = Math.min(_pos + this._blockSize, _fileSize);
+                while(_pos < _blockEnd)
+                {
+                    int _len = (int)Math.min(_buf.length, _blockEnd - _pos);
+                    int _numRead = _is.read(_buf, 0, _len);
+                    if(_numRead <= 0)
+                    {
+                        throw new IOException("Unexpected end of file at " + _pos + ": " + _localFile);
+                    }
+                    _os.write(_buf, 0, _numRead);
+                    _pos += _numRead;
+                    _numTotal += _numRead;
+                }
+                _block++;
+                updateProgress(_progress, _pos, _fileSize, false);
+            }
+        }
+        updateProgress(_progress, _fileSize, _fileSize, true);
+
+        LOG.debug("Delta PUT: sent {} of {} bytes", _numTotal, _fileSize);
+        return _numTotal;
+    }
+
+    /**
+     * Call the progress routine at most once every PROGRESS_DELAY_MS.
+     */
+    private void updateProgress(OraFile.Progress _progress, long _numTotal, long _totalBytes, boolean _force)
+    {
+        if(_progress == null)
+        {
+            return;
+        }
+
+        long _timeDiff = System.currentTimeMillis() - this._lastTime;
+        if(_timeDiff > PROGRESS_DELAY_MS || _force)
+        {
+            this._lastTime = System.currentTimeMillis();
+            _progress.update(_numTotal, _totalBytes);
+        }
+    }
+
+    /**
+     * Compare the hashes of the remote blocks with the local file at the same
+     * offsets.
+     * @return An entry for each remote block that is true if it matches.
+     */
+    private boolean[] compareLocal(File _localFile, long _remoteSize, List<byte[]> _remoteHashes)
+            throws IOException
+    {
+        boolean[] _matched = new boolean[_remoteHashes.size()];
+        if(!_localFile.isFile())
+        {
+            return _matched;
+        }
+
+        MessageDigest _md5 = newDigest();
+        byte[] _buf = new byte[64 * 1024];
+        long _localSize = _localFile.length();
+
+        try(InputStream _is = new FileInputStream(_localFile))
+        {
+            for(int _block = 0; _block < _matched.length; _block++)
+            {
+                long _start = (long)_block * this._blockSize;
+                long _len = Math.min(this._blockSize, _remoteSize - _start);
+                if(_start + _len > _localSize)
+                {
+                    // the rest of the remote blocks are past the end of the local file.
+                    break;
+                }
+
+                _md5.reset();
+                long _remaining = _len;
+                while(_remaining > 0)
+                {
+                    int _numRead = _is.read(_buf, 0, (int)Math.min(_buf.length, _remaining));
+                    if(_numRead <= 0)
+                    {
+                        throw new IOException("Unexpected end of file: " + _localFile);
+                    }
+                    _md5.update(_buf, 0, _numRead);
+                    _remaining -= _numRead;
+                }
+
+                _matched[_block] = Arrays.equals(_md5.digest(), _remoteHashes.get(_block));
+            }
+        }
+        return _matched;
+    }
+
+    /**
+     * Byte ranges of the file that are not covered by matched blocks.
+     */
+    private List<long[]> changedRanges(boolean[] _matched, long _fileSize)
+    {
+        List<long[]> _ranges = new ArrayList<>();
+        long _start = -1;
+        for(int _block = 0; _block <= _matched.length; _block++)
+        {
+            boolean _changed = (_block < _matched.length) && !_matched[_block];
+            long _pos = Math.min((long)_block * this._blockSize, _fileSize);
+            if(_changed && _start < 0)
+            {
+                _start = _pos;
+            }
+            else if(!_changed && _start >= 0)
+            {
+                _ranges.add(new long[] { _start, _pos });
+                _start = -1;
+            }
+        }
+        return _ranges;
+    }
+
+    /**
+     * Read the MD5 hash of each block of a file. Calls DBMS_CRYPTO.HASH over
+     * the chunks read with UTL_FILE.GET_RAW. Each round trip returns the
+     * hashes of many blocks packed into a single RAW.
+     * @param _file
+     * @return
+     * @throws SQLException
+     * @throws IOException
+     */
+    private List<byte[]> readHashes(OraFile _file)
+            throws SQLException, IOException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_raw RAW(32767); ");
+        _sb.append("v_blob BLOB; ");
+        _sb.append("v_hashes RAW(32767); ");
+        _sb.append("v_block PLS_INTEGER := ?; ");
+        _sb.append("v_len PLS_INTEGER; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("DBMS_LOB.CREATETEMPORARY(v_blob, TRUE, DBMS_LOB.CALL); ");
+        _sb.append("FOR i IN 1 .. ? LOOP ");
+        _sb.append("DBMS_LOB.TRIM(v_blob, 0); ");
+        _sb.append("v_len := 0; ");
+        _sb.append("WHILE (v_len < v_block) LOOP ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.GET_RAW(v_fp, v_raw, LEAST(32767, v_block - v_len)); ");
+        _sb.append("EXCEPTION WHEN NO_DATA_FOUND THEN EXIT; ");
+        _sb.append("END; ");
+        _sb.append("DBMS_LOB.WRITEAPPEND(v_blob, UTL_RAW.LENGTH(v_raw), v_raw); ");
+        _sb.append("v_len := v_len + UTL_RAW.LENGTH(v_raw); ");
+        _sb.append("END LOOP; ");
+        _sb.append("EXIT WHEN v_len = 0; ");
+        _sb.append("v_hashes := UTL_RAW.CONCAT(v_hashes, DBMS_CRYPTO.HASH(v_blob, DBMS_CRYPTO.HASH_MD5)); ");
+        _sb.append("END LOOP; ");
+        _sb.append("DBMS_LOB.FREETEMPORARY(v_blob); ");
+        _sb.append("? := v_hashes; ");
+        _sb.append("END; ");
+
+        final int _numBlocks = (int)((_file.length() + this._blockSize - 1) / this._blockSize);
+        List<byte[]> _hashes = new ArrayList<>(_numBlocks);
+
+        _file.oraOpen("rb");
+        OraMetrics.get().recordPrepare();
+        try(OracleCallableStatement _cs = (OracleCallableStatement)_file.getConnection().prepareCall(
+                _sb.toString()))
+        {
+            _cs.setInt(1, this._blockSize);
+            _cs.setInt(2, _file.getOraId());
+            _cs.setInt(3, _file.getOraType());
+            _cs.setInt(4, HASHES_PER_CALL);
+            _cs.registerOutParameter(5, Types.BINARY);
+
+            while(_hashes.size() < _numBlocks)
+            {
+                OraMetrics.execute(OraMetrics.Call.HASH, _cs);
+                byte[] _packed = _cs.getBytes(5);
+                if(_packed == null || _packed.length == 0)
+                {
+                    break;
+                }
+
+                for(int _pos = 0; _pos + HASH_LEN <= _packed.length; _pos += HASH_LEN)
+                {
+                    _hashes.add(Arrays.copyOfRange(_packed, _pos, _pos + HASH_LEN));
+                }
+                LOG.debug("DBMS_CRYPTO.HASH: blocks={}/{}", _hashes.size(), _numBlocks);
+            }
+        }
+        finally
+        {
+            _file.close();
+        }
+
+        if(_hashes.size() != _numBlocks)
+        {
+            throw new IOException(String.format("Expected %d block hashes but got %d: %s", _numBlocks,
+                    _hashes.size(), _file));
+        }
+        return _hashes;
+    }
+
+    private static int countChanged(boolean[] _matched)
+    {
+        int _count = 0;
+        for(boolean _match : _matched)
+        {
+            _count += _match ? 0 : 1;
+        }
+        return _count;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("MD5");
+        }
+        catch(NoSuchAlgorithmException _ex)
+        {
+            throw new IllegalStateException(_ex);
+        }
+    }
+
+    private static void skipFully(InputStream _is, long _len)
+            throws IOException
+    {
+        long _remaining = _len;
+        while(_remaining > 0)
+        {
+            long _numSkipped = _is.skip(_remaining);
+            if(_numSkipped <= 0)
+            {
+                throw new IOException("Unexpected end of file");
+            }
+            _remaining -= _numSkipped;
+        }
+    }
+
+    private static void removeQuietly(OraFile _file)
+    {
+        try
+        {
+            _file.remove();
+        }
+        catch(SQLException _ex)
+        {
+            LOG.debug("Could not remove {}: {}", _file, _ex.getMessage());
+        }
+    }
+}
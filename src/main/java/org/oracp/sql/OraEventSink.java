@@ -0,0 +1,54 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+/**
+ * Receives the start and end of each database call and file transfer so that
+ * they can be recorded as profiling events. An event is started before the
+ * call and committed after it completes.
+ * @see OraEvents
+ * @author Chad Juliano
+ */
+public interface OraEventSink
+{
+    /**
+     * Start timing a database call.
+     * @return A handle that is passed to commitCall or null.
+     */
+    Object beginCall();
+
+    /**
+     * Record a completed database call.
+     * @param _event Handle returned by beginCall.
+     * @param _call Name of the UTL_FILE procedure.
+     * @param _file File that the call was made for.
+     * @param _offset Position in the file when the call was made.
+     * @param _length Bytes moved by the call or the length of the file.
+     */
+    void commitCall(Object _event, String _call, OraFile _file, long _offset, long _length);
+
+    /**
+     * Start timing a transfer.
+     * @return A handle that is passed to commitTransfer or null.
+     */
+    Object beginTransfer();
+
+    /**
+     * Record a completed transfer.
+     * @param _event Handle returned by beginTransfer.
+     * @param _direction get or put.
+     * @param _file File in the directory object.
+     * @param _bytes Bytes transferred.
+     * @param _streams Number of connections used.
+     */
+    void commitTransfer(Object _event, String _direction, OraFile _file, long _bytes, int _streams);
+}
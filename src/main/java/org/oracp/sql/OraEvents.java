@@ -0,0 +1,95 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder events for the database calls and transfers. The
+ * events are defined in the jfr package which needs the jdk.jfr module of
+ * Java 11. It is loaded by name so that the rest of the program still runs on
+ * Java 8, where these methods do nothing.
+ * @author Chad Juliano
+ */
+final class OraEvents
+{
+    private static final Logger       LOG       = LoggerFactory.getLogger(OraEvents.class);
+    private static final String       JFR_SINK  = "org.oracp.sql.jfr.JfrEventSink";
+
+    private static final OraEventSink NO_EVENTS = new OraEventSink()
+    {
+        @Override
+        public Object beginCall()
+        {
+            return null;
+        }
+
+        @Override
+        public void commitCall(Object _event, String _call, OraFile _file, long _offset, long _length)
+        {
+            // not recorded
+        }
+
+        @Override
+        public Object beginTransfer()
+        {
+            return null;
+        }
+
+        @Override
+        public void commitTransfer(Object _event, String _direction, OraFile _file, long _bytes, int _streams)
+        {
+            // not recorded
+        }
+    };
+
+    private static final OraEventSink SINK      = load();
+
+    private OraEvents()
+    {
+    }
+
+    private static OraEventSink load()
+    {
+        try
+        {
+            Class.forName("jdk.jfr.Event");
+            return (OraEventSink)Class.forName(JFR_SINK).getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError _ex)
+        {
+            LOG.debug("JFR events are not available: {}", _ex.toString());
+            return NO_EVENTS;
+        }
+    }
+
+    static Object beginCall()
+    {
+        return SINK.beginCall();
+    }
+
+    static void commitCall(Object _event, String _call, OraFile _file, long _offset, long _length)
+    {
+        SINK.commitCall(_event, _call, _file, _offset, _length);
+    }
+
+    static Object beginTransfer()
+    {
+        return SINK.beginTransfer();
+    }
+
+    static void commitTransfer(Object _event, String _direction, OraFile _file, long _bytes, int _streams)
+    {
+        SINK.commitTransfer(_event, _direction, _file, _bytes, _streams);
+    }
+}
@@ -11,9 +11,15 @@
 
 package org.oracp.sql;
 
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
 import java.sql.CallableStatement;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -21,11 +27,25 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import oracle.jdbc.OracleCallableStatement;
+import oracle.jdbc.OracleTypes;
 
 /**
  * Represents a file located within an Oracle Directory object. This is used in
@@ -38,7 +58,15 @@ import oracle.jdbc.OracleCallableStatement;
 public class OraFile
 {
     private static final Logger LOG               = LoggerFactory.getLogger(OraFile.class);
-    private static final int    MAX_SQL_BUF       = 32767;
+    static final int            MAX_SQL_BUF       = 32767;
+    static final int            DEFAULT_CHUNKS    = 16;
+    static final int            DEFAULT_PIECE     = 1024 * 1024;
+    static final int            DEFAULT_PIPELINE  = 8;
+    static final int            LIST_FETCH_SIZE   = 1000;
+    static final int            STAT_BATCH        = 1000;
+    private static final long   CHANNEL_STEP      = 8 * 1024 * 1024;
+    private static final long   COPY_STEP         = 64 * 1024 * 1024;
+    private static final int    MAX_NAME_LEN      = 2000;
     private final static long   PROGRESS_DELAY_MS = 1000;
 
     private final byte[]        _buf              = new byte[MAX_SQL_BUF];
@@ -46,10 +74,28 @@ public class OraFile
     private final String        _dir;
     private String              _fileName;
 
-    private int                 _length           = 0;
+    private long                _length           = 0;
     private boolean             _exists           = false;
     private int                 _fileId;
     private int                 _fileType;
+    private int                 _chunksPerCall    = DEFAULT_CHUNKS;
+    private Engine              _engine           = Engine.UTL_FILE;
+    private int                 _pieceSize        = DEFAULT_PIECE;
+    private int                 _pipelineDepth    = DEFAULT_PIPELINE;
+    private boolean             _compress         = false;
+    private long                _lastTime         = 0;
+
+    /**
+     * The method used to read the contents of a file.
+     */
+    public enum Engine
+    {
+        /** Read with UTL_FILE.GET_RAW. */
+        UTL_FILE,
+
+        /** Read through a BFILENAME locator with LOB reads. */
+        BFILE;
+    }
 
     /**
      * Constructor
@@ -81,7 +127,7 @@ public class OraFile
      * The length of the file.
      * @return
      */
-    public int length()
+    public long length()
     {
         return this._length;
     }
@@ -128,6 +174,154 @@ public class OraFile
         return String.format("%s/%s", this._dir, this._fileName);
     }
 
+    /**
+     * Set the number of UTL_FILE.GET_RAW chunks fetched in each round trip by
+     * {@linkplain OraFile#getContents}.
+     * @param _chunksPerCall
+     */
+    public void setChunksPerCall(int _chunksPerCall)
+    {
+        this._chunksPerCall = _chunksPerCall;
+    }
+
+    /**
+     * Get the number of UTL_FILE.GET_RAW chunks fetched in each round trip.
+     * @return
+     */
+    public int getChunksPerCall()
+    {
+        return this._chunksPerCall;
+    }
+
+    /**
+     * Set the engine used to read the contents of the file.
+     * @param _engine
+     */
+    public void setEngine(Engine _engine)
+    {
+        this._engine = _engine;
+    }
+
+    /**
+     * Get the engine used to read the contents of the file.
+     * @return
+     */
+    public Engine getEngine()
+    {
+        return this._engine;
+    }
+
+    /**
+     * Set the number of bytes sent in each round trip by
+     * {@linkplain OraFile#putContents}. The database splits each piece into
+     * 32 KB calls to UTL_FILE.PUT_RAW.
+     * @param _pieceSize
+     */
+    public void setPieceSize(int _pieceSize)
+    {
+        this._pieceSize = _pieceSize;
+    }
+
+    /**
+     * Get the number of bytes sent in each round trip.
+     * @return
+     */
+    public int getPieceSize()
+    {
+        return this._pieceSize;
+    }
+
+    /**
+     * Set the number of buffers used by {@linkplain OraFile#transfer} to
+     * overlap reads and writes. A value of 0 or 1 does the reads and writes
+     * one after another in the calling thread.
+     * @param _pipelineDepth
+     */
+    public void setPipelineDepth(int _pipelineDepth)
+    {
+        this._pipelineDepth = _pipelineDepth;
+    }
+
+    /**
+     * Get the number of buffers used to overlap reads and writes.
+     * @return
+     */
+    public int getPipelineDepth()
+    {
+        return this._pipelineDepth;
+    }
+
+    /**
+     * Compress the data sent over the network. GET compresses each set of
+     * chunks with UTL_COMPRESS in the database and PUT compresses each piece
+     * before it is sent.
+     * @param _compress
+     */
+    public void setCompress(boolean _compress)
+    {
+        this._compress = _compress;
+    }
+
+    /**
+     * Indicates if the data sent over the network is compressed.
+     * @return
+     */
+    public boolean isCompress()
+    {
+        return this._compress;
+    }
+
+    /**
+     * Open a stream to read the file with the selected engine.
+     * @return
+     * @throws SQLException
+     */
+    public InputStream openInputStream()
+            throws SQLException
+    {
+        switch(this._engine)
+        {
+            case BFILE:
+                return new OraBfileInputStream(this);
+            case UTL_FILE:
+            default:
+                return new OraInputStream(this, this._chunksPerCall, this._compress);
+        }
+    }
+
+    /**
+     * Open a channel to read the file with multi-chunk GET_RAW calls. The
+     * engine and compression settings are not used.
+     * @return
+     * @throws SQLException
+     */
+    public OraFileChannel openReadChannel()
+            throws SQLException
+    {
+        return new OraFileChannel(this, "rb");
+    }
+
+    /**
+     * Open a channel to write the file with PUT_RAW calls of the piece size.
+     * @param _append Append to the end of an existing file.
+     * @return
+     * @throws SQLException
+     */
+    public OraFileChannel openWriteChannel(boolean _append)
+            throws SQLException
+    {
+        return new OraFileChannel(this, _append ? "ab" : "wb");
+    }
+
+    /**
+     * A transfer between a local file and the database goes through the
+     * channels when the pipeline is off and the plain UTL_FILE calls are used.
+     */
+    private boolean useChannel()
+    {
+        return (this._pipelineDepth <= 1 && this._engine == Engine.UTL_FILE && !this._compress);
+    }
+
     /**
      * Get the ID of the file for UTL_FILE.
      * @return
@@ -146,6 +340,26 @@ public class OraFile
         return this._fileType;
     }
 
+    /**
+     * Prepare a PL/SQL call and count it in {@linkplain OraMetrics}.
+     */
+    private CallableStatement prepareCall(String _sql)
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        return _dbc.prepareCall(_sql);
+    }
+
+    /**
+     * Prepare a query and count it in {@linkplain OraMetrics}.
+     */
+    private PreparedStatement prepareStatement(String _sql)
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        return _dbc.prepareStatement(_sql);
+    }
+
     /**
      * Calls UTL_FILE.FGETATTR procedure.
      * @throws SQLException
@@ -170,21 +384,23 @@ public class OraFile
         _sb.append("? := v_exists; ");
         _sb.append("END; ");
 
-        try(CallableStatement _cs = _dbc.prepareCall(_sb.toString()))
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
             _cs.setString(1, this._dir);
             _cs.setString(2, this._fileName);
-            _cs.registerOutParameter(3, Types.INTEGER);
+            _cs.registerOutParameter(3, Types.BIGINT);
             _cs.registerOutParameter(4, Types.INTEGER);
             _cs.registerOutParameter(5, Types.INTEGER);
-            _cs.execute();
-            this._length = _cs.getInt(3);
+            Object _event = OraEvents.beginCall();
+            OraMetrics.execute(OraMetrics.Call.ATTR, _cs);
+            this._length = _cs.getLong(3);
             int _blocksize = _cs.getInt(4);
             int _intExists = _cs.getInt(5);
             if(_intExists > 0)
             {
                 this._exists = true;
             }
+            OraEvents.commitCall(_event, "FGETATTR", this, 0, this._length);
             LOG.debug("(ex={}, fl={}, bs={}) = UTL_FILE.FGETATTR()", Boolean.toString(this._exists), this._length,
                     _blocksize);
         }
@@ -213,7 +429,7 @@ public class OraFile
         _sb.append("? := v_fp.datatype; ");
         _sb.append("END; ");
 
-        try(CallableStatement _cs = _dbc.prepareCall(_sb.toString()))
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
             _cs.setString(1, this.getDirectory());
             _cs.setString(2, this.getFileName());
@@ -222,12 +438,71 @@ public class OraFile
             _cs.registerOutParameter(5, Types.INTEGER);
 
             LOG.debug("UTL_FILE.FOPEN(dir={}, file={}, mode={})", _fileId, _fileType, _openMode);
-            _cs.execute();
+            Object _event = OraEvents.beginCall();
+            OraMetrics.execute(OraMetrics.Call.OPEN, _cs);
             _fileId = _cs.getInt(4);
             _fileType = _cs.getInt(5);
+            OraEvents.commitCall(_event, "FOPEN", this, 0, 0);
+        }
+    }
+
+    /**
+     * Calls UTL_FILE.FSEEK procedure to move the file pointer to an absolute
+     * position.
+     * @param _offset Absolute byte offset within the file.
+     * @throws SQLException
+     */
+    protected void oraSeek(long _offset)
+            throws SQLException
+    {
+        // UTL_FILE.FSEEK (
+        // file IN OUT NOCOPY UTL_FILE.FILE_TYPE,
+        // absolute_offset IN PL_INTEGER DEFAULT NULL,
+        // relative_offset IN PL_INTEGER DEFAULT NULL);
+
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_pos NUMBER := ?; ");
+        _sb.append("v_step PLS_INTEGER; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        appendSeek(_sb, "v_fp");
+        _sb.append("END; ");
+
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
+        {
+            _cs.setLong(1, _offset);
+            _cs.setInt(2, this._fileId);
+            _cs.setInt(3, this._fileType);
+            LOG.debug("UTL_FILE.FSEEK(id={}, type={}, offset={})", this._fileId, this._fileType, _offset);
+            Object _event = OraEvents.beginCall();
+            OraMetrics.execute(OraMetrics.Call.SEEK, _cs);
+            OraEvents.commitCall(_event, "FSEEK", this, _offset, 0);
         }
     }
 
+    /**
+     * Append PL/SQL that moves the pointer of a file to the absolute position
+     * in v_pos. FSEEK only accepts a PLS_INTEGER offset so larger positions
+     * are reached with a sequence of relative seeks. The block must declare
+     * v_pos NUMBER and v_step PLS_INTEGER.
+     * @param _sb
+     * @param _fileVar Name of the UTL_FILE.FILE_TYPE variable.
+     */
+    private static void appendSeek(StringBuilder _sb, String _fileVar)
+    {
+        _sb.append("v_step := LEAST(v_pos, 2147483647); ");
+        _sb.append("UTL_FILE.FSEEK(").append(_fileVar).append(", v_step); ");
+        _sb.append("v_pos := v_pos - v_step; ");
+        _sb.append("WHILE (v_pos > 0) LOOP ");
+        _sb.append("v_step := LEAST(v_pos, 2147483647); ");
+        _sb.append("UTL_FILE.FSEEK(").append(_fileVar).append(", NULL, v_step); ");
+        _sb.append("v_pos := v_pos - v_step; ");
+        _sb.append("END LOOP; ");
+    }
+
     /**
      * Indicates of this stream has been opened. Calls UTL_FILE.IS_OPEN
      * procedure.
@@ -255,14 +530,14 @@ public class OraFile
         _sb.append("END; ");
 
         boolean _result = false;
-        try(OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString()))
+        try(OracleCallableStatement _cs = (OracleCallableStatement)prepareCall(_sb.toString()))
         {
             _cs.setInt(1, this._fileId);
             _cs.setInt(2, this._fileType);
             _cs.registerOutParameter(3, Types.INTEGER);
 
             LOG.debug("UTL_FILE.IS_OPEN(id={}, type={})", this._fileId, this._fileType);
-            _cs.execute();
+            OraMetrics.execute(OraMetrics.Call.IS_OPEN, _cs);
             int _isOpen = _cs.getInt(3);
             if(_isOpen > 0)
             {
@@ -291,125 +566,1009 @@ public class OraFile
         _sb.append("UTL_FILE.FCLOSE(v_fp); ");
         _sb.append("END; ");
 
-        try(CallableStatement _cs = _dbc.prepareCall(_sb.toString()))
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
             _cs.setInt(1, this._fileId);
             _cs.setInt(2, this._fileType);
             LOG.debug("UTL_FILE.FCLOSE(id={}, type={})", _fileId, _fileType);
-            _cs.execute();
+            Object _event = OraEvents.beginCall();
+            OraMetrics.execute(OraMetrics.Call.CLOSE, _cs);
+            OraEvents.commitCall(_event, "FCLOSE", this, 0, 0);
         }
     }
 
     /**
-     * This is used in combination with the oracp_list_dir function to retrieve
-     * the contents of a directory object.
-     * @return
+     * Calls UTL_FILE.FREMOVE procedure to delete the file.
      * @throws SQLException
      */
-    public String[] listFiles()
+    public void remove()
             throws SQLException
     {
-        StringBuilder _sb = new StringBuilder();
-        _sb.append("select column_value as file_name ");
-        _sb.append("from table(sys.oracp_list_dir(?)) ");
+        // UTL_FILE.FREMOVE (
+        // location IN VARCHAR2,
+        // filename IN VARCHAR2);
 
-        LOG.debug("SQL: {}", _sb.toString());
-        ArrayList<String> _results = new ArrayList<>();
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.FREMOVE(?, ?); ");
+        _sb.append("END; ");
 
-        try(PreparedStatement _stmt = _dbc.prepareStatement(_sb.toString()))
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
-            _stmt.setString(1, this._dir);
-            try(ResultSet _rSet = _stmt.executeQuery())
-            {
-                while(_rSet.next())
-                {
-                    String _dirFile = _rSet.getString(1);
-                    _results.add(_dirFile);
-                }
-            }
+            _cs.setString(1, this._dir);
+            _cs.setString(2, this._fileName);
+            LOG.debug("UTL_FILE.FREMOVE(dir={}, file={})", this._dir, this._fileName);
+            OraMetrics.execute(OraMetrics.Call.REMOVE, _cs);
         }
-        return _results.toArray(new String[0]);
+        this._exists = false;
+        this._length = 0;
     }
 
     /**
-     * This is used in combination with {@linkplain OraFile#getContents} to give
-     * feedback on the progress of a file copy.
+     * Calls UTL_FILE.FRENAME procedure to rename or move the file.
+     * @param _destDir Destination directory object.
+     * @param _destName Destination file name.
+     * @param _overwrite Replace the destination if it exists.
+     * @throws SQLException
      */
-    public interface Progress
+    public void rename(String _destDir, String _destName, boolean _overwrite)
+            throws SQLException
     {
-        /**
-         * Called periodically during the copy of a file.
-         * @param _partBytes Partial bytes transferred.
-         * @param _totalBytes Total bytes in the file.
-         */
-        void update(int _partBytes, int _totalBytes);
+        // UTL_FILE.FRENAME (
+        // src_location IN VARCHAR2,
+        // src_filename IN VARCHAR2,
+        // dest_location IN VARCHAR2,
+        // dest_filename IN VARCHAR2,
+        // overwrite IN BOOLEAN DEFAULT FALSE);
+
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_overwrite BOOLEAN := (? = 1); ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.FRENAME(?, ?, ?, ?, v_overwrite); ");
+        _sb.append("END; ");
+
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
+        {
+            _cs.setInt(1, _overwrite ? 1 : 0);
+            _cs.setString(2, this._dir);
+            _cs.setString(3, this._fileName);
+            _cs.setString(4, _destDir);
+            _cs.setString(5, _destName);
+            LOG.debug("UTL_FILE.FRENAME(dir={}, file={}, dest_dir={}, dest_file={}, overwrite={})", this._dir,
+                    this._fileName, _destDir, _destName, _overwrite);
+            OraMetrics.execute(OraMetrics.Call.RENAME, _cs);
+        }
+        this._exists = false;
     }
 
     /**
-     * Copy the contents of this file to an output stream.
-     * @param _os Stream to output to.
+     * Copy this file to a file in a directory object with a GET_RAW/PUT_RAW
+     * loop that runs inside the database so nothing is sent over the network.
+     * Unlike UTL_FILE.FCOPY it is safe for binary files. Each call copies at
+     * most COPY_STEP bytes so that progress is reported between the calls. An
+     * existing destination is replaced and a partial copy is removed if the
+     * copy fails.
+     * @param _destDir Destination directory object.
+     * @param _destName Destination file name.
      * @param _progress Optional callback routine for progress.
-     * @throws Exception
+     * @return The destination file.
+     * @throws SQLException
      */
-    public void getContents(OutputStream _os, Progress _progress)
-            throws Exception
+    public OraFile copy(String _destDir, String _destName, Progress _progress)
+            throws SQLException
+    {
+        if(this._dir.equalsIgnoreCase(_destDir) && this._fileName.equals(_destName))
+        {
+            throw new IllegalArgumentException("Source and destination are the same file: " + this);
+        }
+
+        OraFile _dest = new OraFile(this._dbc, _destDir, _destName);
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_src UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_dest UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_buf RAW(32767); ");
+        _sb.append("v_len NUMBER := ?; ");
+        _sb.append("v_total NUMBER := 0; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_src.id := ?; ");
+        _sb.append("v_src.datatype := ?; ");
+        _sb.append("v_dest.id := ?; ");
+        _sb.append("v_dest.datatype := ?; ");
+        _sb.append("WHILE (v_total < v_len) LOOP ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.GET_RAW(v_src, v_buf, LEAST(v_len - v_total, 32767)); ");
+        _sb.append("EXCEPTION WHEN NO_DATA_FOUND THEN EXIT; ");
+        _sb.append("END; ");
+        _sb.append("UTL_FILE.PUT_RAW(v_dest, v_buf); ");
+        _sb.append("v_total := v_total + UTL_RAW.LENGTH(v_buf); ");
+        _sb.append("END LOOP; ");
+        _sb.append("UTL_FILE.FFLUSH(v_dest); ");
+        _sb.append("? := v_total; ");
+        _sb.append("EXCEPTION WHEN OTHERS THEN ");
+        _sb.append("IF UTL_FILE.IS_OPEN(v_dest) THEN UTL_FILE.FCLOSE(v_dest); END IF; ");
+        _sb.append("IF UTL_FILE.IS_OPEN(v_src) THEN UTL_FILE.FCLOSE(v_src); END IF; ");
+        _sb.append("RAISE; ");
+        _sb.append("END; ");
+
+        this._lastTime = 0;
+        boolean _open = true;
+        boolean _complete = false;
+        oraOpen("rb");
+        try
+        {
+            _dest.oraOpen("wb");
+            try(CallableStatement _cs = prepareCall(_sb.toString()))
+            {
+                _cs.setInt(2, this._fileId);
+                _cs.setInt(3, this._fileType);
+                _cs.setInt(4, _dest._fileId);
+                _cs.setInt(5, _dest._fileType);
+                _cs.registerOutParameter(6, Types.BIGINT);
+
+                long _numTotal = 0;
+                while(true)
+                {
+                    _cs.setLong(1, COPY_STEP);
+                    Object _event = OraEvents.beginCall();
+                    long _start = System.nanoTime();
+                    try
+                    {
+                        _cs.execute();
+                    }
+                    catch(SQLException _ex)
+                    {
+                        // the block closed both files before raising the error.
+                        _open = false;
+                        throw _ex;
+                    }
+                    long _numCopied = _cs.getLong(6);
+                    OraMetrics.get().record(OraMetrics.Call.COPY, System.nanoTime() - _start, _numCopied);
+                    OraEvents.commitCall(_event, "COPY", this, _numTotal, _numCopied);
+                    LOG.debug("COPY(src={}, dest={}, pos={}, len={})", this, _dest, _numTotal, _numCopied);
+
+                    _numTotal += _numCopied;
+                    boolean _done = (_numCopied < COPY_STEP);
+                    updateProgress(_progress, _numTotal, this._length, _done);
+                    if(_done)
+                    {
+                        break;
+                    }
+                }
+                _complete = true;
+            }
+            finally
+            {
+                if(_open)
+                {
+                    _dest.close();
+                }
+                if(!_complete)
+                {
+                    removeQuietly(_dest);
+                }
+            }
+        }
+        finally
+        {
+            if(_open)
+            {
+                close();
+            }
+        }
+
+        _dest.readAttr();
+        return _dest;
+    }
+
+    private static void removeQuietly(OraFile _file)
     {
-        try(OraInputStream _is = new OraInputStream(this))
+        try
+        {
+            _file.remove();
+        }
+        catch(SQLException _ex)
         {
-            transfer(_is, _os, _progress);
+            LOG.debug("Could not remove {}: {}", _file, _ex.getMessage());
         }
     }
 
     /**
-     * @param _is Source data stream
-     * @param _progress Optional callback routine for progress.
-     * @throws Exception
+     * Calls UTL_FILE.FCOPY procedure to copy this file to a file in a
+     * directory object. FCOPY copies lines of text so {@linkplain #copy}
+     * should be used for binary files. An existing destination is replaced.
+     * @param _destDir Destination directory object.
+     * @param _destName Destination file name.
+     * @return The destination file.
+     * @throws SQLException
      */
-    public void putContents(InputStream _is, Progress _progress)
-            throws Exception
+    public OraFile copyText(String _destDir, String _destName)
+            throws SQLException
     {
-        try(OraOutputStream _os = new OraOutputStream(this))
+        // UTL_FILE.FCOPY (
+        // src_location IN VARCHAR2,
+        // src_filename IN VARCHAR2,
+        // dest_location IN VARCHAR2,
+        // dest_filename IN VARCHAR2,
+        // start_line IN BINARY_INTEGER DEFAULT 1,
+        // end_line IN BINARY_INTEGER DEFAULT NULL);
+
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.FCOPY(?, ?, ?, ?); ");
+        _sb.append("END; ");
+
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
-            transfer(_is, _os, _progress);
+            _cs.setString(1, this._dir);
+            _cs.setString(2, this._fileName);
+            _cs.setString(3, _destDir);
+            _cs.setString(4, _destName);
+            LOG.debug("UTL_FILE.FCOPY(dir={}, file={}, dest_dir={}, dest_file={})", this._dir, this._fileName,
+                    _destDir, _destName);
+            Object _event = OraEvents.beginCall();
+            OraMetrics.execute(OraMetrics.Call.COPY, _cs);
+            OraEvents.commitCall(_event, "FCOPY", this, 0, this._length);
         }
+        return new OraFile(this._dbc, _destDir, _destName);
     }
 
     /**
-     * Copy the contents of this file to an output stream.
-     * @param _is Source data stream
-     * @param _os Destination for data
-     * @param _progress Optional callback routine for progress.
-     * @throws IOException
+     * Append the contents of another file in a directory object to this file.
+     * The data is copied inside the database with a GET_RAW/PUT_RAW loop so
+     * nothing is sent over the network. The source is closed if the copy
+     * fails. This file must be open for writing.
+     * @param _source File to read from.
+     * @throws SQLException
      */
-    public void transfer(InputStream _is, OutputStream _os, Progress _progress)
-            throws IOException
+    protected void oraAppend(OraFile _source)
+            throws SQLException
     {
-        int _numTotal = 0;
-        long _lastTime = 0;
-        int _fileSize = _is.available();
-        while(true)
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_src UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_buf RAW(32767); ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("v_src := UTL_FILE.FOPEN(?, ?, 'rb', 32767); ");
+        _sb.append("LOOP ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.GET_RAW(v_src, v_buf, 32767); ");
+        _sb.append("EXCEPTION WHEN NO_DATA_FOUND THEN EXIT; ");
+        _sb.append("END; ");
+        _sb.append("UTL_FILE.PUT_RAW(v_fp, v_buf); ");
+        _sb.append("END LOOP; ");
+        _sb.append("UTL_FILE.FFLUSH(v_fp); ");
+        _sb.append("UTL_FILE.FCLOSE(v_src); ");
+        _sb.append("EXCEPTION WHEN OTHERS THEN ");
+        _sb.append("IF UTL_FILE.IS_OPEN(v_src) THEN UTL_FILE.FCLOSE(v_src); END IF; ");
+        _sb.append("RAISE; ");
+        _sb.append("END; ");
+
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
         {
-            int _numRead = _is.read(this._buf);
-            if(_numRead > 0)
-            {
-                _numTotal += _numRead;
-                _os.write(this._buf, 0, _numRead);
-            }
+            _cs.setInt(1, this._fileId);
+            _cs.setInt(2, this._fileType);
+            _cs.setString(3, _source.getDirectory());
+            _cs.setString(4, _source.getFileName());
+            LOG.debug("APPEND(id={}, src={})", this._fileId, _source);
+            OraMetrics.execute(OraMetrics.Call.APPEND, _cs);
+        }
+    }
 
-            if(_progress != null)
-            {
-                long _timeDiff = System.currentTimeMillis() - _lastTime;
-                if(_timeDiff > PROGRESS_DELAY_MS || _numRead <= 0)
+    /**
+     * Append a byte range of another file in a directory object to this file.
+     * Like {@linkplain #oraAppend} the data is copied inside the database.
+     * This file must be open for writing.
+     * @param _source File to read from.
+     * @param _offset Start of the range in the source.
+     * @param _length Number of bytes to copy.
+     * @throws SQLException
+     */
+    protected void oraAppendRange(OraFile _source, long _offset, long _length)
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_src UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_buf RAW(32767); ");
+        _sb.append("v_pos NUMBER := ?; ");
+        _sb.append("v_len NUMBER := ?; ");
+        _sb.append("v_step PLS_INTEGER; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("v_src := UTL_FILE.FOPEN(?, ?, 'rb', 32767); ");
+        appendSeek(_sb, "v_src");
+        _sb.append("WHILE (v_len > 0) LOOP ");
+        _sb.append("UTL_FILE.GET_RAW(v_src, v_buf, LEAST(v_len, 32767)); ");
+        _sb.append("UTL_FILE.PUT_RAW(v_fp, v_buf); ");
+        _sb.append("v_len := v_len - UTL_RAW.LENGTH(v_buf); ");
+        _sb.append("END LOOP; ");
+        _sb.append("UTL_FILE.FFLUSH(v_fp); ");
+        _sb.append("UTL_FILE.FCLOSE(v_src); ");
+        _sb.append("EXCEPTION WHEN OTHERS THEN ");
+        _sb.append("IF UTL_FILE.IS_OPEN(v_src) THEN UTL_FILE.FCLOSE(v_src); END IF; ");
+        _sb.append("RAISE; ");
+        _sb.append("END; ");
+
+        try(CallableStatement _cs = prepareCall(_sb.toString()))
+        {
+            _cs.setLong(1, _offset);
+            _cs.setLong(2, _length);
+            _cs.setInt(3, this._fileId);
+            _cs.setInt(4, this._fileType);
+            _cs.setString(5, _source.getDirectory());
+            _cs.setString(6, _source.getFileName());
+            LOG.debug("APPEND(id={}, src={}, offset={}, len={})", this._fileId, _source, _offset, _length);
+            OraMetrics.execute(OraMetrics.Call.APPEND, _cs);
+        }
+    }
+
+    /**
+     * This is used in combination with the oracp_list_dir function to retrieve
+     * the contents of a directory object.
+     * @return
+     * @throws SQLException
+     */
+    public String[] listFiles()
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("select column_value as file_name ");
+        _sb.append("from table(sys.oracp_list_dir(?)) ");
+
+        LOG.debug("SQL: {}", _sb.toString());
+        ArrayList<String> _results = new ArrayList<>();
+
+        try(PreparedStatement _stmt = prepareStatement(_sb.toString()))
+        {
+            _stmt.setFetchSize(LIST_FETCH_SIZE);
+            _stmt.setString(1, this._dir);
+            try(ResultSet _rSet = OraMetrics.executeQuery(OraMetrics.Call.LIST, _stmt))
+            {
+                while(_rSet.next())
+                {
+                    String _dirFile = _rSet.getString(1);
+                    _results.add(_dirFile);
+                }
+            }
+        }
+        return _results.toArray(new String[0]);
+    }
+
+    /**
+     * List the directory objects that the user can access.
+     * @param _dbc JDBC connection
+     * @return Names of the directory objects ordered by name.
+     * @throws SQLException
+     */
+    public static List<String> listDirectories(Connection _dbc)
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("select directory_name ");
+        _sb.append("from all_directories ");
+        _sb.append("order by directory_name ");
+
+        LOG.debug("SQL: {}", _sb.toString());
+        List<String> _results = new ArrayList<>();
+
+        OraMetrics.get().recordPrepare();
+        try(PreparedStatement _stmt = _dbc.prepareStatement(_sb.toString()))
+        {
+            _stmt.setFetchSize(LIST_FETCH_SIZE);
+            try(ResultSet _rSet = OraMetrics.executeQuery(OraMetrics.Call.LIST, _stmt))
+            {
+                while(_rSet.next())
+                {
+                    _results.add(_rSet.getString(1));
+                }
+            }
+        }
+        return _results;
+    }
+
+    /**
+     * List the contents of a directory object with the size and modification
+     * time of each file.
+     * @see #streamFileInfo
+     * @return
+     * @throws SQLException
+     */
+    public List<OraFileInfo> listFileInfo()
+            throws SQLException
+    {
+        try(Stream<OraFileInfo> _files = streamFileInfo(new OraFileFilter()))
+        {
+            return _files.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * List the contents of a directory object ordered by name with the size
+     * and modification time of each file. This uses the oracp_list_dir_attr
+     * function which applies the filter on the server. The rows are fetched
+     * as the stream is read so the stream must be closed to release the
+     * cursor.
+     * <p>
+     * If oracp_list_dir_attr has not been installed then the sizes are read
+     * with FGETATTR for each file returned by oracp_list_dir, the
+     * modification times are unknown and the filter is applied on the client.
+     * @param _filter Files to return.
+     * @return
+     * @throws SQLException
+     */
+    public Stream<OraFileInfo> streamFileInfo(OraFileFilter _filter)
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("select file_name, file_size, mtime ");
+        _sb.append("from table(sys.oracp_list_dir_attr(?, ?, ?, ?)) ");
+        _sb.append("order by file_name ");
+
+        LOG.debug("SQL: {}", _sb.toString());
+        PreparedStatement _stmt = prepareStatement(_sb.toString());
+        ResultSet _rSet;
+
+        try
+        {
+            _stmt.setFetchSize(LIST_FETCH_SIZE);
+            _stmt.setString(1, this._dir);
+            _stmt.setString(2, _filter.getLikePattern());
+            setTime(_stmt, 3, _filter.getModifiedAfter());
+            setTime(_stmt, 4, _filter.getModifiedBefore());
+            _rSet = OraMetrics.executeQuery(OraMetrics.Call.LIST, _stmt);
+        }
+        catch(SQLException _ex)
+        {
+            _stmt.close();
+
+            // ORA-00904: invalid identifier, ORA-06553: wrong number or types of arguments
+            if(_ex.getErrorCode() != 904 && _ex.getErrorCode() != 6553)
+            {
+                throw _ex;
+            }
+
+            LOG.debug("oracp_list_dir_attr is not installed: {}", _ex.getMessage());
+            if(_filter.hasTimeRange())
+            {
+                LOG.warn("Modification times are not available in {}. No files match the time range.", this._dir);
+            }
+            return Arrays.stream(listFiles())
+                .sorted()
+                .map(this::readFileInfo)
+                .filter(_info -> _info != null && _filter.matches(_info));
+        }
+
+        Iterator<OraFileInfo> _iter = new Iterator<OraFileInfo>()
+        {
+            private OraFileInfo _next = null;
+
+            @Override
+            public boolean hasNext()
+            {
+                try
+                {
+                    while(this._next == null && _rSet.next())
+                    {
+                        OraFileInfo _info = new OraFileInfo(_rSet.getString(1), _rSet.getLong(2), _rSet.getLong(3));
+                        if(_filter.matches(_info))
+                        {
+                            this._next = _info;
+                        }
+                    }
+                    return (this._next != null);
+                }
+                catch(SQLException _ex)
+                {
+                    throw new UncheckedIOException(new IOException("Failed to list " + OraFile.this._dir, _ex));
+                }
+            }
+
+            @Override
+            public OraFileInfo next()
+            {
+                if(!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                OraFileInfo _info = this._next;
+                this._next = null;
+                return _info;
+            }
+        };
+
+        Spliterator<OraFileInfo> _split = Spliterators.spliteratorUnknownSize(_iter,
+                Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(_split, false).onClose(() ->
+        {
+            try
+            {
+                _stmt.close();
+            }
+            catch(SQLException _ex)
+            {
+                LOG.debug("Failed to close listing of {}: {}", this._dir, _ex.getMessage());
+            }
+        });
+    }
+
+    private static void setTime(PreparedStatement _stmt, int _idx, long _time)
+            throws SQLException
+    {
+        if(_time > 0)
+        {
+            _stmt.setLong(_idx, _time);
+        }
+        else
+        {
+            _stmt.setNull(_idx, Types.NUMERIC);
+        }
+    }
+
+    /**
+     * Read the size of a file returned by oracp_list_dir.
+     * @return null if the file no longer exists.
+     */
+    private OraFileInfo readFileInfo(String _fileName)
+    {
+        try
+        {
+            OraFile _file = new OraFile(this._dbc, this._dir, _fileName);
+            return _file.exists() ? new OraFileInfo(_fileName, _file.length(), 0) : null;
+        }
+        catch(SQLException _ex)
+        {
+            throw new UncheckedIOException(new IOException("Failed to read attributes of " + _fileName, _ex));
+        }
+    }
+
+    /**
+     * Read the attributes of many files in this directory object with one
+     * round trip per STAT_BATCH files. The names are bound as a PL/SQL table
+     * and UTL_FILE.FGETATTR is called for each one in a loop on the server.
+     * @param _fileNames Names of files in the directory object.
+     * @return The attributes in the same order as the names.
+     * @throws SQLException
+     */
+    public List<OraFileStat> stat(Collection<String> _fileNames)
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_names DBMS_SQL.VARCHAR2_TABLE; ");
+        _sb.append("v_length DBMS_SQL.NUMBER_TABLE; ");
+        _sb.append("v_block DBMS_SQL.NUMBER_TABLE; ");
+        _sb.append("v_bool BOOLEAN; ");
+        _sb.append("v_fl NUMBER; ");
+        _sb.append("v_bs BINARY_INTEGER; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_names := ?; ");
+        _sb.append("FOR i IN 1 .. v_names.COUNT LOOP ");
+        _sb.append("UTL_FILE.FGETATTR(?, v_names(i), v_bool, v_fl, v_bs); ");
+        _sb.append("IF (v_bool=TRUE) THEN v_length(i) := v_fl; v_block(i) := v_bs; ");
+        _sb.append("ELSE v_length(i) := -1; v_block(i) := 0; END IF; ");
+        _sb.append("END LOOP; ");
+        _sb.append("? := v_length; ");
+        _sb.append("? := v_block; ");
+        _sb.append("END; ");
+
+        List<String> _names = new ArrayList<>(_fileNames);
+        List<OraFileStat> _results = new ArrayList<>(_names.size());
+        if(_names.isEmpty())
+        {
+            return _results;
+        }
+
+        try(OracleCallableStatement _cs = (OracleCallableStatement)prepareCall(_sb.toString()))
+        {
+            for(int _start = 0; _start < _names.size(); _start += STAT_BATCH)
+            {
+                String[] _batch = _names.subList(_start, Math.min(_start + STAT_BATCH, _names.size()))
+                    .toArray(new String[0]);
+
+                _cs.setPlsqlIndexTable(1, _batch, STAT_BATCH, _batch.length, OracleTypes.VARCHAR, MAX_NAME_LEN);
+                _cs.setString(2, this._dir);
+                _cs.registerIndexTableOutParameter(3, STAT_BATCH, OracleTypes.NUMBER, 0);
+                _cs.registerIndexTableOutParameter(4, STAT_BATCH, OracleTypes.NUMBER, 0);
+
+                Object _event = OraEvents.beginCall();
+                OraMetrics.execute(OraMetrics.Call.ATTR, _cs);
+                BigDecimal[] _lengths = (BigDecimal[])_cs.getPlsqlIndexTable(3);
+                BigDecimal[] _blocks = (BigDecimal[])_cs.getPlsqlIndexTable(4);
+                OraEvents.commitCall(_event, "FGETATTR", this, 0, _batch.length);
+
+                for(int _idx = 0; _idx < _batch.length; _idx++)
+                {
+                    long _length = _lengths[_idx].longValue();
+                    _results.add((_length < 0) ? new OraFileStat(_batch[_idx], false, 0, 0)
+                            : new OraFileStat(_batch[_idx], true, _length, _blocks[_idx].intValue()));
+                }
+                LOG.debug("UTL_FILE.FGETATTR: files={}/{}", _results.size(), _names.size());
+            }
+        }
+        return _results;
+    }
+
+    /**
+     * This is used in combination with {@linkplain OraFile#getContents} to give
+     * feedback on the progress of a file copy.
+     */
+    public interface Progress
+    {
+        /**
+         * Called periodically during the copy of a file.
+         * @param _partBytes Partial bytes transferred.
+         * @param _totalBytes Total bytes in the file.
+         */
+        void update(long _partBytes, long _totalBytes);
+
+        /**
+         * Checked before each round trip. A transfer that is cancelled stops
+         * with a {@linkplain CancellationException}.
+         * @return true to stop the transfer.
+         */
+        default boolean isCancelled()
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Copy the contents of this file to an output stream.
+     * @param _os Stream to output to.
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void getContents(OutputStream _os, Progress _progress)
+            throws Exception
+    {
+        getContents(_os, 0, _progress);
+    }
+
+    /**
+     * Copy the contents of this file starting at an offset to an output
+     * stream. This is used to resume an interrupted transfer.
+     * @param _os Stream to output to.
+     * @param _offset Position in the file to start reading.
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void getContents(OutputStream _os, long _offset, Progress _progress)
+            throws Exception
+    {
+        Object _event = OraEvents.beginTransfer();
+        if(_os instanceof FileOutputStream && useChannel())
+        {
+            try(OraFileChannel _src = openReadChannel())
+            {
+                _src.position(_offset);
+                transferFrom(_src, ((FileOutputStream)_os).getChannel(), length() - _offset, _progress);
+            }
+        }
+        else
+        {
+            try(InputStream _is = openInputStream())
+            {
+                if(_offset > 0)
                 {
-                    _lastTime = System.currentTimeMillis();
-                    _progress.update(_numTotal, _fileSize);
+                    seek(_is, _offset);
                 }
+                transfer(_is, _os, length() - _offset, _progress);
+            }
+        }
+        OraEvents.commitTransfer(_event, "get", this, length() - _offset, 1);
+    }
+
+    /**
+     * @param _is Source data stream
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void putContents(InputStream _is, Progress _progress)
+            throws Exception
+    {
+        putContents(_is, 0, _progress);
+    }
+
+    /**
+     * Append data to this file starting at an offset. This is used to resume
+     * an interrupted transfer. The offset must be the current length of the
+     * file and the first bytes of the source stream up to the offset are
+     * skipped.
+     * @param _is Source data stream
+     * @param _offset Number of bytes already in the file.
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void putContents(InputStream _is, long _offset, Progress _progress)
+            throws Exception
+    {
+        long _remaining = _offset;
+        while(_remaining > 0)
+        {
+            long _numSkipped = _is.skip(_remaining);
+            if(_numSkipped <= 0)
+            {
+                throw new IOException("Source is shorter than the offset: " + _offset);
+            }
+            _remaining -= _numSkipped;
+        }
+
+        Object _event = OraEvents.beginTransfer();
+        long _numBytes = remaining(_is);
+        long _numSent;
+        boolean _append = (_offset > 0);
+        if(_is instanceof FileInputStream && useChannel())
+        {
+            try(OraFileChannel _dest = openWriteChannel(_append))
+            {
+                _numSent = transferTo(((FileInputStream)_is).getChannel(), _dest, _numBytes, _progress);
+            }
+        }
+        else
+        {
+            try(OraOutputStream _os = new OraOutputStream(this, this._pieceSize, this._compress, _append))
+            {
+                _numSent = transfer(_is, _os, _numBytes, _progress);
             }
+        }
+        OraEvents.commitTransfer(_event, "put", this, _numSent, 1);
+    }
+
+    /**
+     * Copy the contents of this file to an output stream in the background on
+     * the default executor, which uses a virtual thread on Java 21 or later.
+     * @see OraFile#getContentsAsync(OutputStream, Progress, Executor)
+     */
+    public CompletableFuture<Void> getContentsAsync(OutputStream _os, Progress _progress)
+    {
+        return getContentsAsync(_os, _progress, OraAsync.getDefaultExecutor());
+    }
+
+    /**
+     * Copy the contents of this file to an output stream in the background.
+     * Cancelling the future stops the transfer at its next round trip and
+     * closes the file. The connection of this file can't be used by another
+     * transfer until the future is done.
+     * @param _os Stream to output to. It is not closed.
+     * @param _progress Optional callback routine for progress.
+     * @param _executor Runs the transfer.
+     * @return
+     */
+    public CompletableFuture<Void> getContentsAsync(OutputStream _os, Progress _progress, Executor _executor)
+    {
+        return OraAsync.run(this, _checked -> getContents(_os, _checked), _progress, _executor);
+    }
+
+    /**
+     * Copy a stream to this file in the background on the default executor,
+     * which uses a virtual thread on Java 21 or later.
+     * @see OraFile#putContentsAsync(InputStream, Progress, Executor)
+     */
+    public CompletableFuture<Void> putContentsAsync(InputStream _is, Progress _progress)
+    {
+        return putContentsAsync(_is, _progress, OraAsync.getDefaultExecutor());
+    }
+
+    /**
+     * Copy a stream to this file in the background. Cancelling the future
+     * stops the transfer at its next round trip and closes the file, which
+     * keeps the data written so far. The connection of this file can't be
+     * used by another transfer until the future is done.
+     * @param _is Source data stream. It is not closed.
+     * @param _progress Optional callback routine for progress.
+     * @param _executor Runs the transfer.
+     * @return
+     */
+    public CompletableFuture<Void> putContentsAsync(InputStream _is, Progress _progress, Executor _executor)
+    {
+        return OraAsync.run(this, _checked -> putContents(_is, _checked), _progress, _executor);
+    }
+
+    /**
+     * Move the read position of a stream returned by
+     * {@linkplain OraFile#openInputStream}.
+     * @param _is
+     * @param _pos Absolute byte offset within the file.
+     * @throws IOException
+     */
+    static void seek(InputStream _is, long _pos)
+            throws IOException
+    {
+        if(_is instanceof OraBfileInputStream)
+        {
+            ((OraBfileInputStream)_is).seek(_pos);
+        }
+        else
+        {
+            ((OraInputStream)_is).seek(_pos);
+        }
+    }
+
+    /**
+     * Number of bytes left in a stream. {@linkplain InputStream#available} is
+     * limited to 2 GB and for most streams is not the length so it is only
+     * used for a {@linkplain ByteArrayInputStream}.
+     * @param _is
+     * @return The number of bytes or -1 if it is not known.
+     * @throws IOException
+     */
+    static long remaining(InputStream _is)
+            throws IOException
+    {
+        if(_is instanceof FileInputStream)
+        {
+            FileChannel _channel = ((FileInputStream)_is).getChannel();
+            return _channel.size() - _channel.position();
+        }
+        else if(_is instanceof OraInputStream)
+        {
+            return ((OraInputStream)_is).remaining();
+        }
+        else if(_is instanceof OraBfileInputStream)
+        {
+            return ((OraBfileInputStream)_is).remaining();
+        }
+        else if(_is instanceof ByteArrayInputStream)
+        {
+            return _is.available();
+        }
+        return -1;
+    }
+
+    /**
+     * Copy the contents of this file to an output stream.
+     * @param _is Source data stream
+     * @param _os Destination for data
+     * @param _progress Optional callback routine for progress.
+     * @return Number of bytes copied.
+     * @throws IOException
+     */
+    public long transfer(InputStream _is, OutputStream _os, Progress _progress)
+            throws IOException
+    {
+        return transfer(_is, _os, remaining(_is), _progress);
+    }
+
+    /**
+     * Copy the contents of this file to an output stream. If the pipeline is
+     * enabled the reads and writes are done in separate threads so that the
+     * network and local I/O overlap.
+     * @param _is Source data stream
+     * @param _os Destination for data
+     * @param _fileSize Total bytes expected for progress reporting or -1 if
+     *            it is not known.
+     * @param _progress Optional callback routine for progress.
+     * @return Number of bytes copied.
+     * @throws IOException
+     */
+    public long transfer(InputStream _is, OutputStream _os, long _fileSize, Progress _progress)
+            throws IOException
+    {
+        this._lastTime = 0;
+
+        // the side that is not a database stream is the local file.
+        if(isOraStream(_is))
+        {
+            _os = OraMetrics.meterLocal(_os);
+        }
+        else
+        {
+            _is = OraMetrics.meterLocal(_is);
+        }
+
+        if(this._pipelineDepth > 1)
+        {
+            OraPipeline _pipeline = new OraPipeline(this._pipelineDepth, MAX_SQL_BUF);
+            long _numTotal = _pipeline.run(_is, _os,
+                    _numWritten -> updateProgress(_progress, _numWritten, _fileSize, false));
+            updateProgress(_progress, _numTotal, _fileSize, true);
+            return _numTotal;
+        }
+
+        long _numTotal = 0;
+        while(true)
+        {
+            int _numRead = _is.read(this._buf);
+            if(_numRead > 0)
+            {
+                _numTotal += _numRead;
+                _os.write(this._buf, 0, _numRead);
+            }
+
+            updateProgress(_progress, _numTotal, _fileSize, _numRead <= 0);
 
             if(_numRead <= 0)
             {
                 break;
             }
         }
+        return _numTotal;
+    }
+
+    /**
+     * Copy from the database to the current position of a local file with
+     * {@linkplain FileChannel#transferFrom} in steps so that progress can be
+     * reported.
+     */
+    private void transferFrom(OraFileChannel _src, FileChannel _dest, long _fileSize, Progress _progress)
+            throws IOException
+    {
+        this._lastTime = 0;
+        long _pos = _dest.position();
+        long _numTotal = 0;
+        while(true)
+        {
+            long _numCopied = _dest.transferFrom(_src, _pos, CHANNEL_STEP);
+            _pos += _numCopied;
+            _numTotal += _numCopied;
+            updateProgress(_progress, _numTotal, _fileSize, _numCopied <= 0);
+
+            if(_numCopied <= 0)
+            {
+                break;
+            }
+        }
+        _dest.position(_pos);
+    }
+
+    /**
+     * Copy from the current position of a local file to the database with
+     * {@linkplain FileChannel#transferTo} in steps so that progress can be
+     * reported.
+     */
+    private long transferTo(FileChannel _src, OraFileChannel _dest, long _fileSize, Progress _progress)
+            throws IOException
+    {
+        this._lastTime = 0;
+        long _pos = _src.position();
+        long _numTotal = 0;
+        while(true)
+        {
+            long _numCopied = _src.transferTo(_pos, CHANNEL_STEP, _dest);
+            _pos += _numCopied;
+            _numTotal += _numCopied;
+            updateProgress(_progress, _numTotal, _fileSize, _numCopied <= 0);
+
+            if(_numCopied <= 0)
+            {
+                break;
+            }
+        }
+        _src.position(_pos);
+        return _numTotal;
+    }
+
+    private static boolean isOraStream(InputStream _is)
+    {
+        return (_is instanceof OraInputStream) || (_is instanceof OraBfileInputStream);
+    }
+
+    /**
+     * Call the progress routine at most once every PROGRESS_DELAY_MS.
+     */
+    private void updateProgress(Progress _progress, long _numTotal, long _fileSize, boolean _force)
+    {
+        if(_progress == null)
+        {
+            return;
+        }
+        if(_progress.isCancelled())
+        {
+            throw new CancellationException("Transfer cancelled: " + this);
+        }
+
+        long _timeDiff = System.currentTimeMillis() - this._lastTime;
+        if(_timeDiff > PROGRESS_DELAY_MS || _force)
+        {
+            this._lastTime = System.currentTimeMillis();
+            _progress.update(_numTotal, _fileSize);
+        }
     }
 }
@@ -0,0 +1,453 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonReadableChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.sql.SQLException;
+import java.sql.Types;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import oracle.jdbc.OracleCallableStatement;
+
+/**
+ * A channel over a file in a directory object that uses the same multi-chunk
+ * GET_RAW and PUT_RAW calls as {@linkplain OraInputStream} and
+ * {@linkplain OraOutputStream}. The RAW values returned by the driver are
+ * copied straight into the caller's buffer, which can be direct, and heap
+ * buffers that hold a full piece are bound without a copy. This allows
+ * {@linkplain java.nio.channels.FileChannel#transferFrom} and
+ * {@linkplain java.nio.channels.FileChannel#transferTo} to be used with the
+ * local file.
+ * <p>
+ * A channel opened for reading can change its position with FSEEK. UTL_FILE
+ * can't seek or truncate a file opened for writing so those channels only
+ * move forward.
+ * @see OraFile#openReadChannel
+ * @see OraFile#openWriteChannel
+ * @author Chad Juliano
+ */
+public class OraFileChannel implements SeekableByteChannel
+{
+    private static final Logger           LOG        = LoggerFactory.getLogger(OraFileChannel.class);
+    private final OraFile                 _file;
+    private final boolean                 _write;
+    private final int                     _numSlices;
+    private final OracleCallableStatement _stmt;
+    private boolean                       _open      = true;
+    private long                          _position;
+    private long                          _size;
+
+    // chunks returned by the last read call that have not been consumed.
+    private final byte[][]                _chunks;
+    private int                           _chunkIdx  = 0;
+    private int                           _chunkCnt  = 0;
+    private int                           _chunkPos  = 0;
+
+    // data for the next write call that could not be bound in place.
+    private final byte[]                  _pieceBuf;
+    private int                           _pieceLen  = 0;
+    private long                          _sentPos;
+
+    /**
+     * Constructor
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _openMode rb to read, wb to write or ab to append.
+     * @throws SQLException
+     */
+    OraFileChannel(OraFile _file, String _openMode) throws SQLException
+    {
+        this._file = _file;
+        this._write = !"rb".equals(_openMode);
+        if(this._write && !"wb".equals(_openMode) && !"ab".equals(_openMode))
+        {
+            throw new IllegalArgumentException("Open mode must be rb, wb or ab: " + _openMode);
+        }
+
+        if(this._write)
+        {
+            this._numSlices = (_file.getPieceSize() + OraFile.MAX_SQL_BUF - 1) / OraFile.MAX_SQL_BUF;
+            this._pieceBuf = new byte[this._numSlices * OraFile.MAX_SQL_BUF];
+            this._chunks = null;
+            this._position = "ab".equals(_openMode) ? _file.length() : 0;
+        }
+        else
+        {
+            this._numSlices = _file.getChunksPerCall();
+            this._pieceBuf = null;
+            this._chunks = new byte[this._numSlices][];
+            this._position = 0;
+        }
+        this._size = this._write ? this._position : _file.length();
+        this._sentPos = this._position;
+
+        this._file.oraOpen(_openMode);
+        try
+        {
+            this._stmt = this._write ? prepareWrite() : prepareRead();
+        }
+        catch(SQLException _ex)
+        {
+            this._file.close();
+            throw _ex;
+        }
+    }
+
+    private OracleCallableStatement prepareRead()
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)this._file.getConnection().prepareCall(
+                OraInputStream.buildReadBatch(this._numSlices));
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+            _cs.setInt(3, OraFile.MAX_SQL_BUF);
+            for(int _idx = 0; _idx < this._numSlices; _idx++)
+            {
+                _cs.registerOutParameter(4 + _idx, Types.BINARY);
+            }
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    private OracleCallableStatement prepareWrite()
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)this._file.getConnection().prepareCall(
+                OraOutputStream.buildWritePiece(this._numSlices));
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    @Override
+    public int read(ByteBuffer _dst)
+            throws IOException
+    {
+        ensureOpen();
+        if(this._write)
+        {
+            throw new NonReadableChannelException();
+        }
+
+        if(!_dst.hasRemaining())
+        {
+            return 0;
+        }
+
+        try
+        {
+            if(this._chunkIdx >= this._chunkCnt && !fetchChunks())
+            {
+                return -1;
+            }
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+
+        int _numRead = 0;
+        while(_dst.hasRemaining() && this._chunkIdx < this._chunkCnt)
+        {
+            byte[] _chunk = this._chunks[this._chunkIdx];
+            int _len = Math.min(_dst.remaining(), _chunk.length - this._chunkPos);
+            _dst.put(_chunk, this._chunkPos, _len);
+            this._chunkPos += _len;
+            _numRead += _len;
+
+            if(this._chunkPos == _chunk.length)
+            {
+                this._chunks[this._chunkIdx++] = null;
+                this._chunkPos = 0;
+            }
+        }
+
+        this._position += _numRead;
+        return _numRead;
+    }
+
+    /**
+     * Fetch the next set of chunks with a single call.
+     * @return false if we are at the end of the file.
+     */
+    private boolean fetchChunks()
+            throws SQLException
+    {
+        discardChunks();
+        if(this._position >= this._size)
+        {
+            return false;
+        }
+
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        this._stmt.execute();
+        long _nanos = System.nanoTime() - _start;
+
+        long _len = 0;
+        for(int _idx = 0; _idx < this._numSlices; _idx++)
+        {
+            byte[] _chunk = this._stmt.getBytes(4 + _idx);
+            if(_chunk == null || _chunk.length == 0)
+            {
+                // the remaining chunks are past the end of the file
+                break;
+            }
+            this._chunks[this._chunkCnt++] = _chunk;
+            _len += _chunk.length;
+        }
+
+        OraMetrics.get().record(OraMetrics.Call.READ, _nanos, _len);
+        OraEvents.commitCall(_event, "GET_RAW", this._file, this._position, _len);
+        LOG.debug("GET_RAW channel: pos={}, chunks={}, len={}", this._position, this._chunkCnt, _len);
+        return (this._chunkCnt > 0);
+    }
+
+    private void discardChunks()
+    {
+        for(int _idx = 0; _idx < this._chunkCnt; _idx++)
+        {
+            this._chunks[_idx] = null;
+        }
+        this._chunkIdx = 0;
+        this._chunkCnt = 0;
+        this._chunkPos = 0;
+    }
+
+    @Override
+    public int write(ByteBuffer _src)
+            throws IOException
+    {
+        ensureOpen();
+        if(!this._write)
+        {
+            throw new NonWritableChannelException();
+        }
+
+        int _numWritten = _src.remaining();
+        try
+        {
+            while(_src.hasRemaining())
+            {
+                if(this._pieceLen == 0 && _src.hasArray() && _src.remaining() >= this._pieceBuf.length)
+                {
+                    // a full piece in a heap buffer is sent without copying it.
+                    int _len = this._pieceBuf.length;
+                    writePiece(_src.array(), _src.arrayOffset() + _src.position(), _len);
+                    _src.position(_src.position() + _len);
+                    continue;
+                }
+
+                int _len = Math.min(_src.remaining(), this._pieceBuf.length - this._pieceLen);
+                _src.get(this._pieceBuf, this._pieceLen, _len);
+                this._pieceLen += _len;
+                if(this._pieceLen == this._pieceBuf.length)
+                {
+                    flushPiece();
+                }
+            }
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+
+        this._position += _numWritten;
+        this._size = Math.max(this._size, this._position);
+        return _numWritten;
+    }
+
+    private void flushPiece()
+            throws SQLException
+    {
+        if(this._pieceLen > 0)
+        {
+            writePiece(this._pieceBuf, 0, this._pieceLen);
+            this._pieceLen = 0;
+        }
+    }
+
+    /**
+     * Send a piece with a single call. Slices past the end of the data are
+     * bound as NULL.
+     */
+    private void writePiece(byte[] _buf, int _offset, int _len)
+            throws SQLException
+    {
+        for(int _idx = 0; _idx < this._numSlices; _idx++)
+        {
+            int _sliceOffset = _idx * OraFile.MAX_SQL_BUF;
+            int _sliceLen = Math.min(OraFile.MAX_SQL_BUF, _len - _sliceOffset);
+            if(_sliceLen > 0)
+            {
+                this._stmt.setBinaryStream(3 + _idx,
+                        new ByteArrayInputStream(_buf, _offset + _sliceOffset, _sliceLen), _sliceLen);
+            }
+            else
+            {
+                this._stmt.setNull(3 + _idx, Types.BINARY);
+            }
+        }
+
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        this._stmt.execute();
+        OraMetrics.get().record(OraMetrics.Call.WRITE, System.nanoTime() - _start, _len);
+        OraEvents.commitCall(_event, "PUT_RAW", this._file, this._sentPos, _len);
+        LOG.debug("PUT_RAW channel: pos={}, len={}", this._sentPos, _len);
+        this._sentPos += _len;
+    }
+
+    @Override
+    public long position()
+            throws IOException
+    {
+        ensureOpen();
+        return this._position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long _newPosition)
+            throws IOException
+    {
+        ensureOpen();
+        if(_newPosition < 0)
+        {
+            throw new IllegalArgumentException("Negative position: " + _newPosition);
+        }
+        if(_newPosition == this._position)
+        {
+            return this;
+        }
+        if(this._write)
+        {
+            throw new IOException("UTL_FILE can't seek in a file opened for writing: " + this._file);
+        }
+
+        discardChunks();
+        if(_newPosition < this._size)
+        {
+            try
+            {
+                this._file.oraSeek(_newPosition);
+            }
+            catch(SQLException _ex)
+            {
+                throw new IOException(_ex.getMessage(), _ex);
+            }
+        }
+
+        // a position past the end is not sent to the database because reads there return -1.
+        this._position = _newPosition;
+        return this;
+    }
+
+    @Override
+    public long size()
+            throws IOException
+    {
+        ensureOpen();
+        return this._size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long _newSize)
+            throws IOException
+    {
+        ensureOpen();
+        if(!this._write)
+        {
+            throw new NonWritableChannelException();
+        }
+        if(_newSize < this._size)
+        {
+            throw new IOException("UTL_FILE can't truncate a file: " + this._file);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isOpen()
+    {
+        return this._open;
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        if(!this._open)
+        {
+            return;
+        }
+        this._open = false;
+
+        try
+        {
+            try
+            {
+                if(this._write)
+                {
+                    flushPiece();
+                }
+            }
+            finally
+            {
+                try
+                {
+                    this._stmt.close();
+                }
+                finally
+                {
+                    this._file.close();
+                }
+            }
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    private void ensureOpen()
+            throws ClosedChannelException
+    {
+        if(!this._open)
+        {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+
+/**
+ * Selects the files returned by {@linkplain OraFile#streamFileInfo}. The name
+ * is matched with a glob pattern and the modification time with a range. A
+ * glob that only uses * and ? is converted to a LIKE pattern so that the
+ * database does the matching. Every entry is checked again on the client
+ * because oracp_list_dir_attr may not be installed.
+ * @author Chad Juliano
+ */
+public class OraFileFilter
+{
+    private String      _glob           = null;
+    private PathMatcher _matcher        = null;
+    private long        _modifiedAfter  = 0;
+    private long        _modifiedBefore = 0;
+
+    /**
+     * Only return files with a name that matches a glob pattern.
+     * @param _glob Pattern like *.dmp or null for all files.
+     */
+    public void setNamePattern(String _glob)
+    {
+        this._glob = _glob;
+        this._matcher = (_glob == null) ? null : FileSystems.getDefault().getPathMatcher("glob:" + _glob);
+    }
+
+    /**
+     * Only return files modified at or after a time.
+     * @param _time Milliseconds since the epoch or 0 for no limit.
+     */
+    public void setModifiedAfter(long _time)
+    {
+        this._modifiedAfter = _time;
+    }
+
+    /**
+     * Only return files modified before a time.
+     * @param _time Milliseconds since the epoch or 0 for no limit.
+     */
+    public void setModifiedBefore(long _time)
+    {
+        this._modifiedBefore = _time;
+    }
+
+    public long getModifiedAfter()
+    {
+        return this._modifiedAfter;
+    }
+
+    public long getModifiedBefore()
+    {
+        return this._modifiedBefore;
+    }
+
+    /**
+     * @return True if there is a limit on the modification time.
+     */
+    public boolean hasTimeRange()
+    {
+        return (this._modifiedAfter > 0 || this._modifiedBefore > 0);
+    }
+
+    /**
+     * Convert the glob to a LIKE pattern with \ as the escape character.
+     * @return null if there is no pattern or it can't be written with LIKE.
+     */
+    public String getLikePattern()
+    {
+        if(this._glob == null)
+        {
+            return null;
+        }
+
+        StringBuilder _sb = new StringBuilder();
+        for(char _ch : this._glob.toCharArray())
+        {
+            switch(_ch)
+            {
+                case '*':
+                    _sb.append('%');
+                    break;
+                case '?':
+                    _sb.append('_');
+                    break;
+                case '%':
+                case '_':
+                    _sb.append('\\').append(_ch);
+                    break;
+                case '\\':
+                case '[':
+                case ']':
+                case '{':
+                case '}':
+                    // character classes and alternatives are only matched on the client.
+                    return null;
+                default:
+                    _sb.append(_ch);
+            }
+        }
+        return _sb.toString();
+    }
+
+    /**
+     * Check an entry on the client. A file with an unknown modification
+     * time does not match a time range.
+     * @param _info
+     * @return
+     */
+    public boolean matches(OraFileInfo _info)
+    {
+        if(this._matcher != null && !this._matcher.matches(Paths.get(_info.getFileName())))
+        {
+            return false;
+        }
+
+        long _mtime = _info.lastModified();
+        if(this._modifiedAfter > 0 && (_mtime <= 0 || _mtime < this._modifiedAfter))
+        {
+            return false;
+        }
+        if(this._modifiedBefore > 0 && (_mtime <= 0 || _mtime >= this._modifiedBefore))
+        {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+/**
+ * Name, size and modification time of a file in a directory object as
+ * returned by {@linkplain OraFile#streamFileInfo}.
+ * @author Chad Juliano
+ */
+public class OraFileInfo
+{
+    private final String _fileName;
+    private final long   _length;
+    private final long   _lastModified;
+
+    /**
+     * Constructor
+     * @param _fileName
+     * @param _length
+     * @param _lastModified Milliseconds since the epoch or 0 if unknown.
+     */
+    public OraFileInfo(String _fileName, long _length, long _lastModified)
+    {
+        this._fileName = _fileName;
+        this._length = _length;
+        this._lastModified = _lastModified;
+    }
+
+    public String getFileName()
+    {
+        return this._fileName;
+    }
+
+    public long length()
+    {
+        return this._length;
+    }
+
+    /**
+     * Modification time in milliseconds since the epoch.
+     * @return 0 if the database can't report it.
+     */
+    public long lastModified()
+    {
+        return this._lastModified;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s (%d bytes)", this._fileName, this._length);
+    }
+}
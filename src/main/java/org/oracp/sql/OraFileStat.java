@@ -0,0 +1,67 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+/**
+ * Result of UTL_FILE.FGETATTR for a file in a directory object as returned
+ * by {@linkplain OraFile#stat}.
+ * @author Chad Juliano
+ */
+public class OraFileStat
+{
+    private final String  _fileName;
+    private final boolean _exists;
+    private final long    _length;
+    private final int     _blockSize;
+
+    /**
+     * Constructor
+     * @param _fileName
+     * @param _exists
+     * @param _length 0 if the file does not exist.
+     * @param _blockSize Block size of the file system or 0 if the file does not exist.
+     */
+    public OraFileStat(String _fileName, boolean _exists, long _length, int _blockSize)
+    {
+        this._fileName = _fileName;
+        this._exists = _exists;
+        this._length = _length;
+        this._blockSize = _blockSize;
+    }
+
+    public String getFileName()
+    {
+        return this._fileName;
+    }
+
+    public boolean exists()
+    {
+        return this._exists;
+    }
+
+    public long length()
+    {
+        return this._length;
+    }
+
+    public int getBlockSize()
+    {
+        return this._blockSize;
+    }
+
+    @Override
+    public String toString()
+    {
+        return this._exists ? String.format("%s (%d bytes)", this._fileName, this._length)
+                : String.format("%s (missing)", this._fileName);
+    }
+}
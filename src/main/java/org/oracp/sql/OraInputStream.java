@@ -11,11 +11,13 @@
 
 package org.oracp.sql;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.zip.GZIPInputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,11 +33,24 @@ import oracle.jdbc.OracleCallableStatement;
  */
 public class OraInputStream extends InputStream
 {
-    private static final Logger LOG      = LoggerFactory.getLogger(OraInputStream.class);
+    private static final Logger LOG         = LoggerFactory.getLogger(OraInputStream.class);
     private final Connection    _dbc;
     private final OraFile       _file;
+    private final int           _chunksPerCall;
+    private final boolean       _compress;
 
-    private int                 _filePos = 0;
+    // GET_RAW statement that is prepared once and executed for each call.
+    private final OracleCallableStatement _readStmt;
+
+    // chunks returned by a multi-chunk call that have not been read yet.
+    private final byte[]        _batchBuf;
+    private int                 _batchPos   = 0;
+    private int                 _batchLen   = 0;
+
+    // compressed data returned by the database before it is inflated.
+    private final byte[]        _zipBuf;
+
+    private long                _filePos    = 0;
 
     /**
      * Constructor.
@@ -44,14 +59,78 @@ public class OraInputStream extends InputStream
      */
     public OraInputStream(OraFile _file) throws SQLException
     {
+        this(_file, 1);
+    }
+
+    /**
+     * Constructor.
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _chunksPerCall Number of GET_RAW chunks to fetch in each round
+     *            trip. A value of 1 reads directly into the caller's buffer.
+     * @throws SQLException
+     */
+    public OraInputStream(OraFile _file, int _chunksPerCall) throws SQLException
+    {
+        this(_file, _chunksPerCall, false);
+    }
+
+    /**
+     * Constructor.
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _chunksPerCall Number of GET_RAW chunks to fetch in each round
+     *            trip.
+     * @param _compress Compress each set of chunks with UTL_COMPRESS before
+     *            it is sent.
+     * @throws SQLException
+     */
+    public OraInputStream(OraFile _file, int _chunksPerCall, boolean _compress) throws SQLException
+    {
+        if(_chunksPerCall < 1)
+        {
+            throw new IllegalArgumentException("Chunks per call must be at least 1: " + _chunksPerCall);
+        }
+
         this._dbc = _file.getConnection();
         this._file = _file;
+        this._chunksPerCall = _chunksPerCall;
+        this._compress = _compress;
+        boolean _isBatch = (_chunksPerCall > 1 || _compress);
+        this._batchBuf = _isBatch ? new byte[_chunksPerCall * OraFile.MAX_SQL_BUF] : null;
+
+        // compressed data can be slightly larger than the input so leave room for an extra chunk.
+        this._zipBuf = _compress ? new byte[(_chunksPerCall + 1) * OraFile.MAX_SQL_BUF] : null;
         this._file.oraOpen("rb");
+
+        try
+        {
+            if(_compress)
+            {
+                this._readStmt = prepareReadCompressed();
+            }
+            else
+            {
+                this._readStmt = _isBatch ? prepareReadBatch() : prepareRead();
+            }
+        }
+        catch(SQLException _ex)
+        {
+            this._file.close();
+            throw _ex;
+        }
     }
 
     @Override
     public int available()
             throws IOException
+    {
+        return (int)Math.min(Integer.MAX_VALUE, remaining());
+    }
+
+    /**
+     * Number of bytes between the read position and the end of the file.
+     * @return
+     */
+    public long remaining()
     {
         return _file.length() - _filePos;
     }
@@ -60,17 +139,33 @@ public class OraInputStream extends InputStream
     public int read()
             throws IOException
     {
-        throw new IOException("Not implimented!");
+        byte[] _byte = new byte[1];
+        int _numRead = read(_byte, 0, 1);
+        return (_numRead <= 0) ? -1 : (_byte[0] & 0xff);
     }
 
     @Override
     public int read(byte[] _buf)
             throws IOException
+    {
+        return read(_buf, 0, _buf.length);
+    }
+
+    @Override
+    public int read(byte[] _buf, int _offset, int _length)
+            throws IOException
     {
         int _bytesRead;
         try
         {
-            _bytesRead = oraRead(_buf);
+            if(this._batchBuf == null)
+            {
+                _bytesRead = oraRead(_buf, _offset, _length);
+            }
+            else
+            {
+                _bytesRead = readBatch(_buf, _offset, _length);
+            }
         }
         catch(SQLException _ex)
         {
@@ -85,7 +180,14 @@ public class OraInputStream extends InputStream
     {
         try
         {
-            _file.close();
+            try
+            {
+                _readStmt.close();
+            }
+            finally
+            {
+                _file.close();
+            }
         }
         catch(SQLException _ex)
         {
@@ -94,21 +196,37 @@ public class OraInputStream extends InputStream
     }
 
     /**
-     * Calls UTL_FILE.GET_RAW procedure.
-     * @param _buf
-     * @return
-     * @throws SQLException
+     * Move the read position of the stream. Calls UTL_FILE.FSEEK procedure.
+     * @param _pos Absolute byte offset within the file.
      * @throws IOException
      */
-    private int oraRead(byte[] _buf)
-            throws SQLException, IOException
+    public void seek(long _pos)
+            throws IOException
     {
-        if(_filePos >= _file.length())
+        try
         {
-            // we are at the end
-            return -1;
+            _file.oraSeek(_pos);
         }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+        _filePos = _pos;
+
+        // discard chunks that were fetched from the old position
+        _batchPos = 0;
+        _batchLen = 0;
+    }
 
+    /**
+     * Prepare the UTL_FILE.GET_RAW statement used by {@link #oraRead}. The file
+     * handle binds do not change so only the length is bound for each chunk.
+     * @return
+     * @throws SQLException
+     */
+    private OracleCallableStatement prepareRead()
+            throws SQLException
+    {
         // UTL_FILE.GET_RAW (
         // fid IN utl_file.file_type,
         // r OUT NOCOPY RAW,
@@ -123,22 +241,328 @@ public class OraInputStream extends InputStream
         _sb.append("UTL_FILE.GET_RAW (v_fp, ?, ?); ");
         _sb.append("END; ");
 
-        int _numRead = -1;
-        try(OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString()))
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString());
+        try
         {
             _cs.setInt(1, this._file.getOraId());
             _cs.setInt(2, this._file.getOraType());
             _cs.registerOutParameter(3, Types.BINARY);
-            _cs.setInt(4, _buf.length);
-            _cs.execute();
-            //LOG.debug("UTL_FILE.GET_RAW(id={}, type={}, len={})", this._fileId, this._fileType, _buf.length);
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
 
-            try(InputStream _is = _cs.getBinaryStream(3))
+    /**
+     * Prepare a statement that calls UTL_FILE.GET_RAW once for each chunk
+     * inside a single PL/SQL block so that many chunks are returned in one
+     * round trip. Each chunk is returned in its own RAW out parameter and
+     * chunks after the end of the file are returned as NULL.
+     * @return
+     * @throws SQLException
+     */
+    private OracleCallableStatement prepareReadBatch()
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(buildReadBatch(this._chunksPerCall));
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+            _cs.setInt(3, OraFile.MAX_SQL_BUF);
+            for(int _idx = 0; _idx < this._chunksPerCall; _idx++)
             {
-                _numRead = _is.read(_buf);
+                _cs.registerOutParameter(4 + _idx, Types.BINARY);
             }
-            _filePos += _numRead;
         }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    /**
+     * Build the PL/SQL block used by {@link #prepareReadBatch}. The binds are
+     * the file ID, the file type, the chunk length and then one RAW out
+     * parameter for each chunk.
+     * @param _chunksPerCall
+     * @return
+     */
+    static String buildReadBatch(int _chunksPerCall)
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_len PLS_INTEGER; ");
+        _sb.append("PROCEDURE get_chunk(p_buf OUT NOCOPY RAW) IS ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.GET_RAW (v_fp, p_buf, v_len); ");
+        _sb.append("EXCEPTION WHEN NO_DATA_FOUND THEN p_buf := NULL; ");
+        _sb.append("END; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("v_len := ?; ");
+        for(int _idx = 0; _idx < _chunksPerCall; _idx++)
+        {
+            _sb.append("get_chunk(?); ");
+        }
+        _sb.append("END; ");
+        return _sb.toString();
+    }
+
+    /**
+     * Copy data from the chunks of the last multi-chunk call and fetch the
+     * next set of chunks when they are exhausted.
+     * @param _buf
+     * @param _offset offset into buffer
+     * @param _length maximum number of bytes to read
+     * @return
+     * @throws SQLException
+     * @throws IOException
+     */
+    private int readBatch(byte[] _buf, int _offset, int _length)
+            throws SQLException, IOException
+    {
+        if(_batchPos >= _batchLen)
+        {
+            if(!oraReadBatch())
+            {
+                return -1;
+            }
+        }
+
+        int _numRead = Math.min(_length, _batchLen - _batchPos);
+        System.arraycopy(_batchBuf, _batchPos, _buf, _offset, _numRead);
+        _batchPos += _numRead;
+        _filePos += _numRead;
+        return _numRead;
+    }
+
+    /**
+     * Fetch the next set of chunks with a single call.
+     * @return false if we are at the end of the file.
+     * @throws SQLException
+     * @throws IOException
+     */
+    private boolean oraReadBatch()
+            throws SQLException, IOException
+    {
+        _batchPos = 0;
+        _batchLen = 0;
+
+        if(_filePos >= _file.length())
+        {
+            // we are at the end
+            return false;
+        }
+
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        _readStmt.execute();
+        long _nanos = System.nanoTime() - _start;
+
+        if(this._compress)
+        {
+            // the metrics count the bytes that crossed the network.
+            int _zipLen = inflateBatch();
+            OraMetrics.get().record(OraMetrics.Call.READ, _nanos, _zipLen);
+            OraEvents.commitCall(_event, "GET_RAW", this._file, _filePos, _batchLen);
+            return (_zipLen > 0);
+        }
+
+        _batchLen = readOutParams(4, this._chunksPerCall, _batchBuf);
+        OraMetrics.get().record(OraMetrics.Call.READ, _nanos, _batchLen);
+        OraEvents.commitCall(_event, "GET_RAW", this._file, _filePos, _batchLen);
+
+        LOG.debug("GET_RAW batch: pos={}, chunks={}, len={}", _filePos, this._chunksPerCall, _batchLen);
+        return (_batchLen > 0);
+    }
+
+    /**
+     * Prepare a statement that reads a set of chunks into a temporary BLOB,
+     * compresses it with UTL_COMPRESS.LZ_COMPRESS and returns the compressed
+     * data split across RAW out parameters. The number of bytes read from the
+     * file is returned so the end of the file can be detected.
+     * @return
+     * @throws SQLException
+     */
+    private OracleCallableStatement prepareReadCompressed()
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_raw RAW(32767); ");
+        _sb.append("v_blob BLOB; ");
+        _sb.append("v_zip BLOB; ");
+        _sb.append("v_len INTEGER := 0; ");
+        _sb.append("v_zip_len INTEGER := 0; ");
+        _sb.append("v_zip_pos INTEGER := 1; ");
+        _sb.append("PROCEDURE get_chunk(p_buf OUT NOCOPY RAW) IS ");
+        _sb.append("BEGIN ");
+        _sb.append("IF (v_zip_pos <= v_zip_len) THEN ");
+        _sb.append("p_buf := DBMS_LOB.SUBSTR(v_zip, 32767, v_zip_pos); ");
+        _sb.append("v_zip_pos := v_zip_pos + 32767; ");
+        _sb.append("ELSE p_buf := NULL; END IF; ");
+        _sb.append("END; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("DBMS_LOB.CREATETEMPORARY(v_blob, TRUE, DBMS_LOB.CALL); ");
+        _sb.append("FOR i IN 1 .. ? LOOP ");
+        _sb.append("BEGIN ");
+        _sb.append("UTL_FILE.GET_RAW (v_fp, v_raw, 32767); ");
+        _sb.append("EXCEPTION WHEN NO_DATA_FOUND THEN EXIT; ");
+        _sb.append("END; ");
+        _sb.append("DBMS_LOB.WRITEAPPEND(v_blob, UTL_RAW.LENGTH(v_raw), v_raw); ");
+        _sb.append("END LOOP; ");
+        _sb.append("v_len := DBMS_LOB.GETLENGTH(v_blob); ");
+        _sb.append("IF (v_len > 0) THEN ");
+        _sb.append("v_zip := UTL_COMPRESS.LZ_COMPRESS(v_blob); ");
+        _sb.append("v_zip_len := DBMS_LOB.GETLENGTH(v_zip); ");
+        _sb.append("END IF; ");
+        _sb.append("? := v_len; ");
+        for(int _idx = 0; _idx <= this._chunksPerCall; _idx++)
+        {
+            _sb.append("get_chunk(?); ");
+        }
+        _sb.append("DBMS_LOB.FREETEMPORARY(v_blob); ");
+        _sb.append("IF (v_zip IS NOT NULL) THEN DBMS_LOB.FREETEMPORARY(v_zip); END IF; ");
+        _sb.append("END; ");
+
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString());
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+            _cs.setInt(3, this._chunksPerCall);
+            _cs.registerOutParameter(4, Types.INTEGER);
+            for(int _idx = 0; _idx <= this._chunksPerCall; _idx++)
+            {
+                _cs.registerOutParameter(5 + _idx, Types.BINARY);
+            }
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    /**
+     * Inflate the compressed chunks returned by the last call into the batch
+     * buffer.
+     * @return Number of compressed bytes or 0 if we are at the end of the
+     *         file.
+     * @throws SQLException
+     * @throws IOException
+     */
+    private int inflateBatch()
+            throws SQLException, IOException
+    {
+        int _rawLen = _readStmt.getInt(4);
+        if(_rawLen <= 0)
+        {
+            return 0;
+        }
+
+        int _zipLen = readOutParams(5, this._chunksPerCall + 1, _zipBuf);
+        try(InputStream _is = new GZIPInputStream(new ByteArrayInputStream(_zipBuf, 0, _zipLen)))
+        {
+            int _numRead;
+            while((_numRead = _is.read(_batchBuf, _batchLen, _batchBuf.length - _batchLen)) > 0)
+            {
+                _batchLen += _numRead;
+            }
+        }
+
+        if(_batchLen != _rawLen)
+        {
+            throw new IOException(String.format("Expected %d bytes after decompression but got %d: %s",
+                    _rawLen, _batchLen, _file));
+        }
+
+        LOG.debug("GET_RAW compressed: pos={}, len={}, zip={}", _filePos, _rawLen, _zipLen);
+        return _zipLen;
+    }
+
+    /**
+     * Copy a sequence of RAW out parameters into a buffer. A NULL parameter
+     * marks the end of the data.
+     * @param _startIdx Index of the first parameter.
+     * @param _count Maximum number of parameters.
+     * @param _buf Destination buffer.
+     * @return Number of bytes copied.
+     * @throws SQLException
+     * @throws IOException
+     */
+    private int readOutParams(int _startIdx, int _count, byte[] _buf)
+            throws SQLException, IOException
+    {
+        int _len = 0;
+        for(int _idx = 0; _idx < _count; _idx++)
+        {
+            try(InputStream _is = _readStmt.getBinaryStream(_startIdx + _idx))
+            {
+                if(_is == null)
+                {
+                    // the remaining chunks are past the end of the data
+                    break;
+                }
+
+                int _numRead;
+                while((_numRead = _is.read(_buf, _len, _buf.length - _len)) > 0)
+                {
+                    _len += _numRead;
+                }
+            }
+        }
+        return _len;
+    }
+
+    /**
+     * Calls UTL_FILE.GET_RAW procedure.
+     * @param _buf
+     * @param _offset offset into buffer
+     * @param _length maximum number of bytes to read
+     * @return
+     * @throws SQLException
+     * @throws IOException
+     */
+    private int oraRead(byte[] _buf, int _offset, int _length)
+            throws SQLException, IOException
+    {
+        if(_filePos >= _file.length())
+        {
+            // we are at the end
+            return -1;
+        }
+
+        int _numRead = -1;
+        _readStmt.setInt(4, _length);
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        _readStmt.execute();
+        long _nanos = System.nanoTime() - _start;
+        //LOG.debug("UTL_FILE.GET_RAW(id={}, type={}, len={})", this._fileId, this._fileType, _length);
+
+        try(InputStream _is = _readStmt.getBinaryStream(3))
+        {
+            _numRead = _is.read(_buf, _offset, _length);
+        }
+        OraMetrics.get().record(OraMetrics.Call.READ, _nanos, Math.max(_numRead, 0));
+        OraEvents.commitCall(_event, "GET_RAW", this._file, _filePos, Math.max(_numRead, 0));
+        _filePos += _numRead;
 
         return _numRead;
     }
@@ -0,0 +1,375 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters for the database calls made by OraFile and its streams. Each call
+ * type records the number of calls, the bytes of file data moved, the total
+ * and maximum latency and a latency histogram. The time spent on local file
+ * I/O and the number of statements prepared are recorded separately so that
+ * a slow transfer can be attributed to the network, the local disk or the
+ * client.
+ * <p>
+ * There is a single instance for the process that can be registered as an
+ * MXBean and written as a JSON report.
+ * @author Chad Juliano
+ */
+public class OraMetrics implements OraMetricsMXBean
+{
+    private static final Logger     LOG         = LoggerFactory.getLogger(OraMetrics.class);
+    public static final String      OBJECT_NAME = "org.oracp:type=OraMetrics";
+
+    // upper bounds of the histogram buckets in microseconds. The last bucket has no bound.
+    private static final long[]     BUCKETS_US  = { 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+            100000, 250000, 500000, 1000000 };
+
+    private static final OraMetrics INSTANCE    = new OraMetrics();
+
+    /**
+     * Types of database call.
+     */
+    public enum Call
+    {
+        ATTR,
+        IS_OPEN,
+        OPEN,
+        SEEK,
+        READ,
+        WRITE,
+        CLOSE,
+        APPEND,
+        REMOVE,
+        RENAME,
+        COPY,
+        LIST,
+        HASH;
+    }
+
+    /**
+     * Counters for one type of call.
+     */
+    private static class CallStats
+    {
+        private final LongAdder       _count    = new LongAdder();
+        private final LongAdder       _nanos    = new LongAdder();
+        private final LongAdder       _bytes    = new LongAdder();
+        private final AtomicLong      _maxNanos = new AtomicLong();
+        private final AtomicLongArray _buckets  = new AtomicLongArray(BUCKETS_US.length + 1);
+
+        private void record(long _callNanos, long _callBytes)
+        {
+            this._count.increment();
+            this._nanos.add(_callNanos);
+            this._bytes.add(_callBytes);
+            this._maxNanos.accumulateAndGet(_callNanos, Math::max);
+
+            long _micros = _callNanos / 1000;
+            int _idx = 0;
+            while(_idx < BUCKETS_US.length && _micros > BUCKETS_US[_idx])
+            {
+                _idx++;
+            }
+            this._buckets.incrementAndGet(_idx);
+        }
+
+        private void reset()
+        {
+            this._count.reset();
+            this._nanos.reset();
+            this._bytes.reset();
+            this._maxNanos.set(0);
+            for(int _idx = 0; _idx < this._buckets.length(); _idx++)
+            {
+                this._buckets.set(_idx, 0);
+            }
+        }
+    }
+
+    private final Map<Call, CallStats> _calls      = new EnumMap<>(Call.class);
+    private final LongAdder            _localNanos = new LongAdder();
+    private final LongAdder            _localBytes = new LongAdder();
+    private final LongAdder            _prepares   = new LongAdder();
+
+    private OraMetrics()
+    {
+        for(Call _call : Call.values())
+        {
+            this._calls.put(_call, new CallStats());
+        }
+    }
+
+    /**
+     * The metrics of this process.
+     * @return
+     */
+    public static OraMetrics get()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * Register the metrics with the platform MBean server under OBJECT_NAME.
+     */
+    public static void register()
+    {
+        try
+        {
+            MBeanServer _server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName _name = new ObjectName(OBJECT_NAME);
+            if(!_server.isRegistered(_name))
+            {
+                _server.registerMBean(INSTANCE, _name);
+            }
+        }
+        catch(JMException _ex)
+        {
+            LOG.warn("Could not register {}: {}", OBJECT_NAME, _ex.getMessage());
+        }
+    }
+
+    /**
+     * Record a completed database call.
+     * @param _call Type of call.
+     * @param _nanos Time from the start of the call to the end.
+     * @param _bytes Bytes of file data moved by the call.
+     */
+    public void record(Call _call, long _nanos, long _bytes)
+    {
+        this._calls.get(_call).record(_nanos, _bytes);
+    }
+
+    /**
+     * Record a read or write of a local file.
+     * @param _nanos
+     * @param _bytes
+     */
+    public void recordLocal(long _nanos, long _bytes)
+    {
+        this._localNanos.add(_nanos);
+        this._localBytes.add(_bytes);
+    }
+
+    /**
+     * Record that a statement was prepared.
+     */
+    public void recordPrepare()
+    {
+        this._prepares.increment();
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts()
+    {
+        Map<String, Long> _result = new LinkedHashMap<>();
+        this._calls.forEach((_call, _stats) -> _result.put(_call.name(), _stats._count.sum()));
+        return _result;
+    }
+
+    @Override
+    public Map<String, Long> getCallBytes()
+    {
+        Map<String, Long> _result = new LinkedHashMap<>();
+        this._calls.forEach((_call, _stats) -> _result.put(_call.name(), _stats._bytes.sum()));
+        return _result;
+    }
+
+    @Override
+    public Map<String, Double> getMeanLatencyMs()
+    {
+        Map<String, Double> _result = new LinkedHashMap<>();
+        this._calls.forEach((_call, _stats) ->
+        {
+            long _count = _stats._count.sum();
+            _result.put(_call.name(), (_count == 0) ? 0.0 : _stats._nanos.sum() / 1000000.0 / _count);
+        });
+        return _result;
+    }
+
+    @Override
+    public long getNetworkTimeMs()
+    {
+        return this._calls.values().stream().mapToLong(_stats -> _stats._nanos.sum()).sum() / 1000000;
+    }
+
+    @Override
+    public long getLocalIoTimeMs()
+    {
+        return this._localNanos.sum() / 1000000;
+    }
+
+    @Override
+    public long getLocalIoBytes()
+    {
+        return this._localBytes.sum();
+    }
+
+    @Override
+    public long getPrepareCount()
+    {
+        return this._prepares.sum();
+    }
+
+    @Override
+    public void reset()
+    {
+        this._calls.values().forEach(CallStats::reset);
+        this._localNanos.reset();
+        this._localBytes.reset();
+        this._prepares.reset();
+    }
+
+    /**
+     * Total number of database calls.
+     * @return
+     */
+    public long getCallCount()
+    {
+        return this._calls.values().stream().mapToLong(_stats -> _stats._count.sum()).sum();
+    }
+
+    @Override
+    public String getReport()
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("{\n");
+        appendFields(_sb);
+        _sb.append("\n}\n");
+        return _sb.toString();
+    }
+
+    /**
+     * Write the metrics as the fields of a JSON object without the braces so
+     * that the caller can add its own fields.
+     * @param _sb
+     */
+    public void appendFields(StringBuilder _sb)
+    {
+        _sb.append(String.format(Locale.ROOT, "  \"networkTimeMs\": %d,\n", getNetworkTimeMs()));
+        _sb.append(String.format(Locale.ROOT, "  \"localIoTimeMs\": %d,\n", getLocalIoTimeMs()));
+        _sb.append(String.format(Locale.ROOT, "  \"localIoBytes\": %d,\n", getLocalIoBytes()));
+        _sb.append(String.format(Locale.ROOT, "  \"prepareCount\": %d,\n", getPrepareCount()));
+        _sb.append("  \"calls\": {");
+
+        String _sep = "\n";
+        for(Map.Entry<Call, CallStats> _entry : this._calls.entrySet())
+        {
+            CallStats _stats = _entry.getValue();
+            long _count = _stats._count.sum();
+            if(_count == 0)
+            {
+                continue;
+            }
+
+            double _totalMs = _stats._nanos.sum() / 1000000.0;
+            _sb.append(_sep);
+            _sb.append(String.format(Locale.ROOT, "    \"%s\": {\"count\": %d, \"bytes\": %d, "
+                    + "\"totalMs\": %.3f, \"meanMs\": %.3f, \"maxMs\": %.3f, \"histogramUs\": {",
+                    _entry.getKey().name(), _count, _stats._bytes.sum(), _totalMs, _totalMs / _count,
+                    _stats._maxNanos.get() / 1000000.0));
+
+            for(int _idx = 0; _idx < _stats._buckets.length(); _idx++)
+            {
+                String _label = (_idx < BUCKETS_US.length) ? "le" + BUCKETS_US[_idx] : "inf";
+                _sb.append(String.format(Locale.ROOT, "%s\"%s\": %d", (_idx > 0) ? ", " : "", _label,
+                        _stats._buckets.get(_idx)));
+            }
+            _sb.append("}}");
+            _sep = ",\n";
+        }
+        _sb.append("\n  }");
+    }
+
+    /**
+     * Execute a statement that does not move file data and record its
+     * latency.
+     */
+    static void execute(Call _call, PreparedStatement _stmt)
+            throws SQLException
+    {
+        long _start = System.nanoTime();
+        _stmt.execute();
+        INSTANCE.record(_call, System.nanoTime() - _start, 0);
+    }
+
+    /**
+     * Execute a query and record its latency.
+     */
+    static ResultSet executeQuery(Call _call, PreparedStatement _stmt)
+            throws SQLException
+    {
+        long _start = System.nanoTime();
+        ResultSet _rSet = _stmt.executeQuery();
+        INSTANCE.record(_call, System.nanoTime() - _start, 0);
+        return _rSet;
+    }
+
+    /**
+     * Wrap a local input stream so that the time spent reading it is recorded.
+     */
+    static InputStream meterLocal(InputStream _is)
+    {
+        return new FilterInputStream(_is)
+        {
+            @Override
+            public int read(byte[] _buf, int _offset, int _length)
+                    throws IOException
+            {
+                long _start = System.nanoTime();
+                int _numRead = super.read(_buf, _offset, _length);
+                INSTANCE.recordLocal(System.nanoTime() - _start, Math.max(_numRead, 0));
+                return _numRead;
+            }
+        };
+    }
+
+    /**
+     * Wrap a local output stream so that the time spent writing it is recorded.
+     */
+    static OutputStream meterLocal(OutputStream _os)
+    {
+        return new FilterOutputStream(_os)
+        {
+            @Override
+            public void write(byte[] _buf, int _offset, int _length)
+                    throws IOException
+            {
+                long _start = System.nanoTime();
+                this.out.write(_buf, _offset, _length);
+                INSTANCE.recordLocal(System.nanoTime() - _start, _length);
+            }
+        };
+    }
+}
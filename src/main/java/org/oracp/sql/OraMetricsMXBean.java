@@ -0,0 +1,67 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@linkplain OraMetrics}. The maps are keyed by the
+ * name of the call type.
+ * @author Chad Juliano
+ */
+public interface OraMetricsMXBean
+{
+    /**
+     * @return Number of database calls of each type.
+     */
+    Map<String, Long> getCallCounts();
+
+    /**
+     * @return Bytes of file data moved by each type of call.
+     */
+    Map<String, Long> getCallBytes();
+
+    /**
+     * @return Mean latency of each type of call in milliseconds.
+     */
+    Map<String, Double> getMeanLatencyMs();
+
+    /**
+     * @return Time spent waiting for database calls.
+     */
+    long getNetworkTimeMs();
+
+    /**
+     * @return Time spent reading and writing local files.
+     */
+    long getLocalIoTimeMs();
+
+    /**
+     * @return Bytes read or written locally.
+     */
+    long getLocalIoBytes();
+
+    /**
+     * @return Number of statements prepared.
+     */
+    long getPrepareCount();
+
+    /**
+     * @return All the metrics as a JSON document.
+     */
+    String getReport();
+
+    /**
+     * Clear all the metrics.
+     */
+    void reset();
+}
@@ -12,11 +12,14 @@
 package org.oracp.sql;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Types;
+import java.util.zip.GZIPOutputStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,14 +40,111 @@ public class OraOutputStream extends OutputStream
     private final OraFile       _file;
     private long                _filePos = 0;
 
+    // PUT_RAW statement that is prepared once and executed for each call.
+    private final OracleCallableStatement _writeStmt;
+
+    // data collected for the next piece when writing multiple slices per call.
+    private final int           _slicesPerCall;
+    private final byte[]        _pieceBuf;
+    private int                 _pieceLen = 0;
+
+    // compressed copy of the piece when compression is enabled.
+    private final boolean       _compress;
+    private final ZipBuffer     _zipBuf;
+
+    /**
+     * Exposes the internal buffer so that compressed data can be bound
+     * without another copy.
+     */
+    private static class ZipBuffer extends ByteArrayOutputStream
+    {
+        private ZipBuffer(int _size)
+        {
+            super(_size);
+        }
+
+        private byte[] getBuffer()
+        {
+            return this.buf;
+        }
+    }
+
     /**
      * Constructor
      */
     OraOutputStream(OraFile _file) throws SQLException
     {
+        this(_file, OraFile.MAX_SQL_BUF);
+    }
+
+    /**
+     * Constructor
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _pieceSize Number of bytes sent in each round trip. Pieces larger
+     *            than 32 KB are split into PUT_RAW calls inside the database.
+     */
+    OraOutputStream(OraFile _file, int _pieceSize) throws SQLException
+    {
+        this(_file, _pieceSize, false);
+    }
+
+    /**
+     * Constructor
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _pieceSize Number of bytes sent in each round trip before
+     *            compression.
+     * @param _compress Compress each piece before it is sent and uncompress
+     *            it with UTL_COMPRESS inside the database.
+     */
+    OraOutputStream(OraFile _file, int _pieceSize, boolean _compress) throws SQLException
+    {
+        this(_file, _pieceSize, _compress, false);
+    }
+
+    /**
+     * Constructor
+     * @param _file A file contained within an Oracle Directory object.
+     * @param _pieceSize Number of bytes sent in each round trip before
+     *            compression.
+     * @param _compress Compress each piece before it is sent.
+     * @param _append Append to the end of an existing file.
+     */
+    OraOutputStream(OraFile _file, int _pieceSize, boolean _compress, boolean _append) throws SQLException
+    {
+        if(_pieceSize < 1)
+        {
+            throw new IllegalArgumentException("Piece size must be at least 1: " + _pieceSize);
+        }
+
         this._dbc = _file.getConnection();
         this._file = _file;
-        this._file.oraOpen("wb");
+        this._slicesPerCall = (_pieceSize + OraFile.MAX_SQL_BUF - 1) / OraFile.MAX_SQL_BUF;
+        this._compress = _compress;
+
+        int _bufSize = this._slicesPerCall * OraFile.MAX_SQL_BUF;
+        boolean _isPiece = (this._slicesPerCall > 1 || _compress);
+        this._pieceBuf = _isPiece ? new byte[_bufSize] : null;
+
+        // compressed data can be slightly larger than the input so leave room for an extra slice.
+        this._zipBuf = _compress ? new ZipBuffer(_bufSize + OraFile.MAX_SQL_BUF) : null;
+        this._file.oraOpen(_append ? "ab" : "wb");
+
+        try
+        {
+            if(_compress)
+            {
+                this._writeStmt = prepareWriteCompressed();
+            }
+            else
+            {
+                this._writeStmt = _isPiece ? prepareWritePiece() : prepareWrite();
+            }
+        }
+        catch(SQLException _ex)
+        {
+            this._file.close();
+            throw _ex;
+        }
     }
 
     @Override
@@ -53,7 +153,21 @@ public class OraOutputStream extends OutputStream
     {
         try
         {
-            _file.close();
+            try
+            {
+                flushPiece();
+            }
+            finally
+            {
+                try
+                {
+                    _writeStmt.close();
+                }
+                finally
+                {
+                    _file.close();
+                }
+            }
         }
         catch(SQLException _ex)
         {
@@ -62,10 +176,10 @@ public class OraOutputStream extends OutputStream
     }
 
     @Override
-    public void write(int arg0)
+    public void write(int _byte)
             throws IOException
     {
-        throw new IOException("Not implimented!");
+        write(new byte[] { (byte)_byte }, 0, 1);
     }
 
     @Override
@@ -74,7 +188,39 @@ public class OraOutputStream extends OutputStream
     {
         try
         {
-            oraWrite(_buf, _offset, _length);
+            if(this._pieceBuf == null)
+            {
+                oraWrite(_buf, _offset, _length);
+                return;
+            }
+
+            while(_length > 0)
+            {
+                int _numCopy = Math.min(_length, _pieceBuf.length - _pieceLen);
+                System.arraycopy(_buf, _offset, _pieceBuf, _pieceLen, _numCopy);
+                _pieceLen += _numCopy;
+                _offset += _numCopy;
+                _length -= _numCopy;
+
+                if(_pieceLen == _pieceBuf.length)
+                {
+                    flushPiece();
+                }
+            }
+        }
+        catch(SQLException _ex)
+        {
+            throw new IOException(_ex.getMessage(), _ex);
+        }
+    }
+
+    @Override
+    public void flush()
+            throws IOException
+    {
+        try
+        {
+            flushPiece();
         }
         catch(SQLException _ex)
         {
@@ -83,12 +229,13 @@ public class OraOutputStream extends OutputStream
     }
 
     /**
-     * Calls UTL_FILE.PUT_RAW procedure.
-     * @param _buf input data
-     * @param _offset offset into buffer
-     * @param _length number of bytes to write
+     * Prepare the UTL_FILE.PUT_RAW statement used by {@link #oraWrite}. The
+     * file handle binds do not change so only the data is bound for each
+     * chunk.
+     * @return
+     * @throws SQLException
      */
-    protected void oraWrite(byte[] _buf, int _offset, int _length)
+    private OracleCallableStatement prepareWrite()
             throws SQLException
     {
         //UTL_FILE.PUT_RAW (
@@ -105,15 +252,224 @@ public class OraOutputStream extends OutputStream
         _sb.append("UTL_FILE.PUT_RAW (v_fp, ?); ");
         _sb.append("END; ");
 
-        try(OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString()))
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString());
+        try
         {
             _cs.setInt(1, this._file.getOraId());
             _cs.setInt(2, this._file.getOraType());
-            InputStream _is = new ByteArrayInputStream(_buf, _offset, _length);
-            _cs.setBinaryStream(3, _is, _length);
-            LOG.debug("UTL_FILE.PUT_RAW(id={}, offset={}, len={})", this._file.getOraId(), _offset, _length);
-            _cs.execute();
-            _filePos += _length;
         }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    /**
+     * Prepare a statement that receives a piece of the file as several RAW
+     * slices and calls UTL_FILE.PUT_RAW for each of them inside a single
+     * PL/SQL block. Unused slices are bound as NULL and skipped. The file is
+     * flushed once at the end of the piece.
+     * @return
+     * @throws SQLException
+     */
+    private OracleCallableStatement prepareWritePiece()
+            throws SQLException
+    {
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(buildWritePiece(this._slicesPerCall));
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    /**
+     * Build the PL/SQL block used by {@link #prepareWritePiece}. The binds are
+     * the file ID, the file type and then one RAW parameter for each slice.
+     * @param _slicesPerCall
+     * @return
+     */
+    static String buildWritePiece(int _slicesPerCall)
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("PROCEDURE put_slice(p_buf IN RAW) IS ");
+        _sb.append("BEGIN ");
+        _sb.append("IF (p_buf IS NOT NULL) THEN UTL_FILE.PUT_RAW (v_fp, p_buf); END IF; ");
+        _sb.append("END; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        for(int _idx = 0; _idx < _slicesPerCall; _idx++)
+        {
+            _sb.append("put_slice(?); ");
+        }
+        _sb.append("UTL_FILE.FFLUSH (v_fp); ");
+        _sb.append("END; ");
+        return _sb.toString();
+    }
+
+    /**
+     * Prepare a statement that receives a compressed piece as several RAW
+     * slices, collects them into a temporary BLOB and uncompresses it with
+     * UTL_COMPRESS.LZ_UNCOMPRESS. The result is written with UTL_FILE.PUT_RAW
+     * in 32 KB slices and the file is flushed once at the end of the piece.
+     * @return
+     * @throws SQLException
+     */
+    private OracleCallableStatement prepareWriteCompressed()
+            throws SQLException
+    {
+        StringBuilder _sb = new StringBuilder();
+        _sb.append("DECLARE ");
+        _sb.append("v_fp UTL_FILE.FILE_TYPE; ");
+        _sb.append("v_zip BLOB; ");
+        _sb.append("v_blob BLOB; ");
+        _sb.append("v_len INTEGER; ");
+        _sb.append("v_pos INTEGER := 1; ");
+        _sb.append("PROCEDURE put_slice(p_buf IN RAW) IS ");
+        _sb.append("BEGIN ");
+        _sb.append("IF (p_buf IS NOT NULL) THEN ");
+        _sb.append("DBMS_LOB.WRITEAPPEND(v_zip, UTL_RAW.LENGTH(p_buf), p_buf); ");
+        _sb.append("END IF; ");
+        _sb.append("END; ");
+        _sb.append("BEGIN ");
+        _sb.append("v_fp.id := ?; ");
+        _sb.append("v_fp.datatype := ?; ");
+        _sb.append("DBMS_LOB.CREATETEMPORARY(v_zip, TRUE, DBMS_LOB.CALL); ");
+        for(int _idx = 0; _idx <= this._slicesPerCall; _idx++)
+        {
+            _sb.append("put_slice(?); ");
+        }
+        _sb.append("v_blob := UTL_COMPRESS.LZ_UNCOMPRESS(v_zip); ");
+        _sb.append("v_len := DBMS_LOB.GETLENGTH(v_blob); ");
+        _sb.append("WHILE (v_pos <= v_len) LOOP ");
+        _sb.append("UTL_FILE.PUT_RAW (v_fp, DBMS_LOB.SUBSTR(v_blob, 32767, v_pos)); ");
+        _sb.append("v_pos := v_pos + 32767; ");
+        _sb.append("END LOOP; ");
+        _sb.append("UTL_FILE.FFLUSH (v_fp); ");
+        _sb.append("DBMS_LOB.FREETEMPORARY(v_zip); ");
+        _sb.append("DBMS_LOB.FREETEMPORARY(v_blob); ");
+        _sb.append("END; ");
+
+        OraMetrics.get().recordPrepare();
+        OracleCallableStatement _cs = (OracleCallableStatement)_dbc.prepareCall(_sb.toString());
+        try
+        {
+            _cs.setInt(1, this._file.getOraId());
+            _cs.setInt(2, this._file.getOraType());
+        }
+        catch(SQLException _ex)
+        {
+            _cs.close();
+            throw _ex;
+        }
+        return _cs;
+    }
+
+    /**
+     * Send the data collected for the current piece with a single call.
+     * @throws SQLException
+     * @throws IOException
+     */
+    private void flushPiece()
+            throws SQLException, IOException
+    {
+        if(this._pieceBuf == null || _pieceLen == 0)
+        {
+            return;
+        }
+
+        // the metrics count the bytes that cross the network.
+        int _sendLen = _pieceLen;
+        if(this._compress)
+        {
+            _zipBuf.reset();
+            try(GZIPOutputStream _zos = new GZIPOutputStream(_zipBuf))
+            {
+                _zos.write(_pieceBuf, 0, _pieceLen);
+            }
+
+            int _maxLen = (this._slicesPerCall + 1) * OraFile.MAX_SQL_BUF;
+            if(_zipBuf.size() > _maxLen)
+            {
+                throw new IOException(String.format("Compressed piece is too large: %d > %d", _zipBuf.size(),
+                        _maxLen));
+            }
+            bindSlices(_zipBuf.getBuffer(), _zipBuf.size(), this._slicesPerCall + 1);
+            _sendLen = _zipBuf.size();
+            LOG.debug("PUT_RAW compressed: pos={}, len={}, zip={}", _filePos, _pieceLen, _zipBuf.size());
+        }
+        else
+        {
+            bindSlices(_pieceBuf, _pieceLen, this._slicesPerCall);
+            LOG.debug("PUT_RAW piece: pos={}, slices={}, len={}", _filePos, this._slicesPerCall, _pieceLen);
+        }
+
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        _writeStmt.execute();
+        OraMetrics.get().record(OraMetrics.Call.WRITE, System.nanoTime() - _start, _sendLen);
+        OraEvents.commitCall(_event, "PUT_RAW", this._file, _filePos, _pieceLen);
+        _filePos += _pieceLen;
+        _pieceLen = 0;
+    }
+
+    /**
+     * Bind a buffer to a sequence of RAW parameters of up to 32 KB each.
+     * Parameters past the end of the data are bound as NULL.
+     * @param _buf Data to send.
+     * @param _len Number of bytes in the buffer.
+     * @param _count Number of parameters.
+     * @throws SQLException
+     */
+    private void bindSlices(byte[] _buf, int _len, int _count)
+            throws SQLException
+    {
+        for(int _idx = 0; _idx < _count; _idx++)
+        {
+            int _sliceOffset = _idx * OraFile.MAX_SQL_BUF;
+            int _sliceLen = Math.min(OraFile.MAX_SQL_BUF, _len - _sliceOffset);
+            if(_sliceLen > 0)
+            {
+                InputStream _is = new ByteArrayInputStream(_buf, _sliceOffset, _sliceLen);
+                _writeStmt.setBinaryStream(3 + _idx, _is, _sliceLen);
+            }
+            else
+            {
+                _writeStmt.setNull(3 + _idx, Types.BINARY);
+            }
+        }
+    }
+
+    /**
+     * Calls UTL_FILE.PUT_RAW procedure.
+     * @param _buf input data
+     * @param _offset offset into buffer
+     * @param _length number of bytes to write
+     */
+    protected void oraWrite(byte[] _buf, int _offset, int _length)
+            throws SQLException
+    {
+        InputStream _is = new ByteArrayInputStream(_buf, _offset, _length);
+        _writeStmt.setBinaryStream(3, _is, _length);
+        LOG.debug("UTL_FILE.PUT_RAW(id={}, offset={}, len={})", this._file.getOraId(), _offset, _length);
+        Object _event = OraEvents.beginCall();
+        long _start = System.nanoTime();
+        _writeStmt.execute();
+        OraMetrics.get().record(OraMetrics.Call.WRITE, System.nanoTime() - _start, _length);
+        OraEvents.commitCall(_event, "PUT_RAW", this._file, _filePos, _length);
+        _filePos += _length;
     }
 }
@@ -0,0 +1,526 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transfers a single file over several JDBC connections at once. The file is
+ * divided into byte ranges and each worker opens its own connection, seeks to
+ * the range it claimed and copies it independently. Throughput then scales
+ * with the number of connections instead of the latency of a single
+ * connection.
+ * <p>
+ * For a PUT each segment is uploaded into a temporary part file. The parts are
+ * then concatenated inside the database and the result is renamed to the
+ * destination so that a partially assembled file is never visible under the
+ * target name.
+ * @see OraFile
+ * @author Chad Juliano
+ */
+public class OraParallelTransfer
+{
+    private static final Logger LOG                 = LoggerFactory.getLogger(OraParallelTransfer.class);
+    private static final long   PROGRESS_DELAY_MS   = 1000;
+    private static final long   TUNE_POLL_MS        = 200;
+
+    // number of segments per worker so that faster workers can claim more of the file.
+    private static final int    SEGMENTS_PER_WORKER = 4;
+
+    private static final String PART_SUFFIX         = ".oracp-part";
+    private static final String TEMP_SUFFIX         = ".oracp-tmp";
+
+    private final DataSource    _ds;
+    private final String        _dir;
+    private final int           _threads;
+
+    private final AtomicLong    _nextOffset         = new AtomicLong();
+    private final AtomicLong    _numTotal           = new AtomicLong();
+    private final AtomicInteger _numWorkers         = new AtomicInteger();
+    private long                _lastTime           = 0;
+    private OraAutoTuner        _tuner              = null;
+
+    /**
+     * Constructor
+     * @param _ds Source of JDBC connections for the workers.
+     * @param _dir Directory object.
+     * @param _threads Number of parallel connections.
+     */
+    public OraParallelTransfer(DataSource _ds, String _dir, int _threads)
+    {
+        this._ds = _ds;
+        this._dir = _dir;
+        this._threads = _threads;
+    }
+
+    /**
+     * Let a tuner choose the number of workers and the size of each round
+     * trip while the transfer runs. The number of threads given to the
+     * constructor should be the tuner's upper limit.
+     * @param _tuner
+     */
+    public void setAutoTuner(OraAutoTuner _tuner)
+    {
+        this._tuner = _tuner;
+    }
+
+    /**
+     * Copy the contents of a file in the directory object to a local file.
+     * Each worker writes directly into its offset of the local file.
+     * @param _source The file to copy. Only its name and length are used.
+     * @param _localFile Destination file.
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void getContents(OraFile _source, File _localFile, OraFile.Progress _progress)
+            throws Exception
+    {
+        final long _fileSize = _source.length();
+        final long _segmentSize = getSegmentSize(_fileSize);
+        LOG.debug("Parallel GET: threads={}, segment={}", this._threads, _segmentSize);
+
+        this._nextOffset.set(0);
+        this._numTotal.set(0);
+
+        Object _event = OraEvents.beginTransfer();
+        try(FileChannel _channel = FileChannel.open(_localFile.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            runWorkers(_fileSize, () ->
+            {
+                getWorker(_source, _channel, _fileSize, _segmentSize, _progress);
+                return null;
+            });
+        }
+
+        updateProgress(_progress, _fileSize, true);
+        OraEvents.commitTransfer(_event, "get", _source, _fileSize, getStreams());
+        if(this._tuner != null)
+        {
+            LOG.info("Auto-tune result: --parallel {} --chunks {}", this._tuner.getStreams(),
+                    this._tuner.getSlices());
+        }
+    }
+
+    /**
+     * Claim segments of the source file until there are none left.
+     */
+    private void getWorker(OraFile _source, FileChannel _channel, long _fileSize, long _segmentSize,
+            OraFile.Progress _progress)
+            throws Exception
+    {
+        final byte[] _buf = new byte[OraFile.MAX_SQL_BUF];
+
+        try(Connection _dbc = this._ds.getConnection())
+        {
+            OraFile _oraFile = new OraFile(_dbc, this._dir, _source.getFileName());
+            _oraFile.setChunksPerCall(_source.getChunksPerCall());
+            _oraFile.setEngine(_source.getEngine());
+            _oraFile.setCompress(_source.isCompress());
+            InputStream _is = null;
+            try
+            {
+                while(keepWorking())
+                {
+                    long _start = this._nextOffset.getAndAdd(_segmentSize);
+                    if(_start >= _fileSize)
+                    {
+                        break;
+                    }
+
+                    if(this._tuner != null && this._tuner.getSlices() != _oraFile.getChunksPerCall())
+                    {
+                        // the statement is prepared for a fixed number of chunks so it is reopened.
+                        _oraFile.setChunksPerCall(this._tuner.getSlices());
+                        if(_is != null)
+                        {
+                            _is.close();
+                            _is = null;
+                        }
+                    }
+
+                    if(_is == null)
+                    {
+                        _is = _oraFile.openInputStream();
+                    }
+
+                    long _end = Math.min(_start + _segmentSize, _fileSize);
+                    LOG.debug("Segment: {}-{} ({})", _start, _end, Thread.currentThread().getName());
+                    OraFile.seek(_is, _start);
+
+                    long _pos = _start;
+                    while(_pos < _end)
+                    {
+                        int _len = (int)Math.min(_buf.length, _end - _pos);
+                        int _numRead = _is.read(_buf, 0, _len);
+                        if(_numRead <= 0)
+                        {
+                            throw new IOException(String.format("Unexpected end of file at %d: %s", _pos,
+                                    _oraFile));
+                        }
+
+                        long _ioStart = System.nanoTime();
+                        ByteBuffer _bb = ByteBuffer.wrap(_buf, 0, _numRead);
+                        while(_bb.hasRemaining())
+                        {
+                            _pos += _channel.write(_bb, _pos);
+                        }
+                        OraMetrics.get().recordLocal(System.nanoTime() - _ioStart, _numRead);
+
+                        this._numTotal.addAndGet(_numRead);
+                        updateProgress(_progress, _fileSize, false);
+                    }
+                }
+            }
+            finally
+            {
+                if(_is != null)
+                {
+                    _is.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the contents of a local file into a directory object. Segments are
+     * uploaded in parallel as part files that are assembled on the connection
+     * of the destination file.
+     * @param _localFile Source file.
+     * @param _dest Destination file. Its connection is used for assembly.
+     * @param _progress Optional callback routine for progress.
+     * @throws Exception
+     */
+    public void putContents(File _localFile, OraFile _dest, OraFile.Progress _progress)
+            throws Exception
+    {
+        final long _fileSize = _localFile.length();
+        final long _segmentSize = getSegmentSize(_fileSize);
+        final int _numParts = (int)((_fileSize + _segmentSize - 1) / _segmentSize);
+        LOG.debug("Parallel PUT: threads={}, segment={}, parts={}", this._threads, _segmentSize, _numParts);
+
+        this._nextOffset.set(0);
+        this._numTotal.set(0);
+
+        List<String> _parts = new ArrayList<>();
+        for(int _idx = 0; _idx < _numParts; _idx++)
+        {
+            _parts.add(String.format("%s%s%04d", _dest.getFileName(), PART_SUFFIX, _idx));
+        }
+
+        Object _event = OraEvents.beginTransfer();
+        try
+        {
+            try(FileChannel _channel = FileChannel.open(_localFile.toPath(), StandardOpenOption.READ))
+            {
+                runWorkers(_fileSize, () ->
+                {
+                    putWorker(_channel, _parts, _dest, _fileSize, _segmentSize, _progress);
+                    return null;
+                });
+            }
+
+            updateProgress(_progress, _fileSize, true);
+            if(this._tuner != null)
+            {
+                LOG.info("Auto-tune result: --parallel {} --piece-size {}", this._tuner.getStreams(),
+                        this._tuner.getSlices() * OraFile.MAX_SQL_BUF / 1024);
+            }
+            assemble(_dest, _parts);
+            OraEvents.commitTransfer(_event, "put", _dest, _fileSize, getStreams());
+        }
+        catch(Exception _ex)
+        {
+            removeParts(_dest.getConnection(), _parts);
+            throw _ex;
+        }
+    }
+
+    /**
+     * Claim segments of the local file and upload each into its part file.
+     */
+    private void putWorker(FileChannel _channel, List<String> _parts, OraFile _dest, long _fileSize,
+            long _segmentSize, OraFile.Progress _progress)
+            throws Exception
+    {
+        final byte[] _buf = new byte[OraFile.MAX_SQL_BUF];
+
+        try(Connection _dbc = this._ds.getConnection())
+        {
+            while(keepWorking())
+            {
+                long _start = this._nextOffset.getAndAdd(_segmentSize);
+                if(_start >= _fileSize)
+                {
+                    break;
+                }
+
+                long _end = Math.min(_start + _segmentSize, _fileSize);
+                String _partName = _parts.get((int)(_start / _segmentSize));
+                LOG.debug("Segment: {}-{} {} ({})", _start, _end, _partName, Thread.currentThread().getName());
+
+                int _pieceSize = (this._tuner != null) ? this._tuner.getSlices() * OraFile.MAX_SQL_BUF
+                        : _dest.getPieceSize();
+
+                OraFile _part = new OraFile(_dbc, this._dir, _partName);
+                try(OraOutputStream _os = new OraOutputStream(_part, _pieceSize, _dest.isCompress()))
+                {
+                    long _pos = _start;
+                    while(_pos < _end)
+                    {
+                        int _len = (int)Math.min(_buf.length, _end - _pos);
+                        long _ioStart = System.nanoTime();
+                        ByteBuffer _bb = ByteBuffer.wrap(_buf, 0, _len);
+                        while(_bb.hasRemaining())
+                        {
+                            if(_channel.read(_bb, _pos + _bb.position()) < 0)
+                            {
+                                throw new IOException("Unexpected end of file: " + _pos);
+                            }
+                        }
+                        OraMetrics.get().recordLocal(System.nanoTime() - _ioStart, _len);
+
+                        _os.write(_buf, 0, _len);
+                        _pos += _len;
+
+                        this._numTotal.addAndGet(_len);
+                        updateProgress(_progress, _fileSize, false);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Start the workers and wait for them to finish. With a tuner the calling
+     * thread samples the throughput and starts more workers when the tuner
+     * asks for them.
+     */
+    private void runWorkers(long _fileSize, Callable<Void> _worker)
+            throws Exception
+    {
+        ExecutorService _pool = Executors.newFixedThreadPool(this._threads);
+        try
+        {
+            List<Future<Void>> _futures = new CopyOnWriteArrayList<>();
+            int _numStart = (this._tuner != null) ? this._tuner.getStreams() : this._threads;
+            this._numWorkers.set(_numStart);
+            for(int _idx = 0; _idx < _numStart; _idx++)
+            {
+                _futures.add(_pool.submit(_worker));
+            }
+
+            if(this._tuner != null)
+            {
+                this._tuner.start(System.currentTimeMillis());
+                while(this._nextOffset.get() < _fileSize && !_futures.stream().allMatch(Future::isDone))
+                {
+                    Thread.sleep(TUNE_POLL_MS);
+                    this._tuner.sample(this._numTotal.get(), System.currentTimeMillis());
+                    while(this._numWorkers.get() < this._tuner.getStreams() && this._nextOffset.get() < _fileSize)
+                    {
+                        this._numWorkers.incrementAndGet();
+                        _futures.add(_pool.submit(_worker));
+                    }
+                }
+            }
+
+            waitAll(_futures);
+        }
+        finally
+        {
+            _pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Number of connections used by the last transfer.
+     */
+    private int getStreams()
+    {
+        return (this._tuner != null) ? this._tuner.getStreams() : this._threads;
+    }
+
+    /**
+     * Decide if a worker should claim another segment. When the tuner has
+     * reduced the number of streams the extra workers stop.
+     */
+    private boolean keepWorking()
+    {
+        if(this._tuner == null)
+        {
+            return true;
+        }
+
+        while(true)
+        {
+            int _count = this._numWorkers.get();
+            if(_count <= this._tuner.getStreams())
+            {
+                return true;
+            }
+            if(this._numWorkers.compareAndSet(_count, _count - 1))
+            {
+                LOG.debug("Worker stopped by auto-tune ({})", Thread.currentThread().getName());
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Concatenate the part files into a temporary file and then rename it to
+     * the destination.
+     */
+    private static void assemble(OraFile _dest, List<String> _parts)
+            throws Exception
+    {
+        LOG.info("Assembling {} parts...", _parts.size());
+
+        Connection _dbc = _dest.getConnection();
+        OraFile _temp = new OraFile(_dbc, _dest.getDirectory(), _dest.getFileName() + TEMP_SUFFIX);
+        try
+        {
+            _temp.oraOpen("wb");
+            try
+            {
+                for(String _partName : _parts)
+                {
+                    OraFile _part = new OraFile(_dbc, _dest.getDirectory(), _partName);
+                    _temp.oraAppend(_part);
+                    _part.remove();
+                }
+            }
+            finally
+            {
+                _temp.close();
+            }
+            _temp.rename(_dest.getDirectory(), _dest.getFileName(), true);
+        }
+        catch(Exception _ex)
+        {
+            removeQuietly(_temp);
+            throw _ex;
+        }
+    }
+
+    /**
+     * Remove any part files left behind after a failure.
+     */
+    private void removeParts(Connection _dbc, List<String> _parts)
+    {
+        for(String _partName : _parts)
+        {
+            try
+            {
+                OraFile _part = new OraFile(_dbc, this._dir, _partName);
+                if(_part.exists())
+                {
+                    _part.remove();
+                }
+            }
+            catch(SQLException _ex)
+            {
+                LOG.debug("Could not remove {}: {}", _partName, _ex.getMessage());
+            }
+        }
+    }
+
+    private static void removeQuietly(OraFile _file)
+    {
+        try
+        {
+            _file.remove();
+        }
+        catch(SQLException _ex)
+        {
+            LOG.debug("Could not remove {}: {}", _file, _ex.getMessage());
+        }
+    }
+
+    /**
+     * Choose a segment size that is a multiple of the UTL_FILE buffer.
+     */
+    private long getSegmentSize(long _fileSize)
+    {
+        long _segmentSize = _fileSize / (this._threads * SEGMENTS_PER_WORKER);
+        _segmentSize = ((_segmentSize / OraFile.MAX_SQL_BUF) + 1) * OraFile.MAX_SQL_BUF;
+        return _segmentSize;
+    }
+
+    /**
+     * Report progress from the workers at most once every PROGRESS_DELAY_MS.
+     */
+    private synchronized void updateProgress(OraFile.Progress _progress, long _fileSize, boolean _force)
+    {
+        if(_progress == null)
+        {
+            return;
+        }
+
+        long _timeDiff = System.currentTimeMillis() - this._lastTime;
+        if(_timeDiff > PROGRESS_DELAY_MS || _force)
+        {
+            this._lastTime = System.currentTimeMillis();
+            _progress.update(this._numTotal.get(), _fileSize);
+        }
+    }
+
+    /**
+     * Wait for all workers to finish. The first failure is re-thrown after the
+     * remaining workers have been cancelled.
+     */
+    private static void waitAll(List<Future<Void>> _futures)
+            throws Exception
+    {
+        try
+        {
+            for(Future<Void> _future : _futures)
+            {
+                _future.get();
+            }
+        }
+        catch(ExecutionException _ex)
+        {
+            _futures.forEach(_future -> _future.cancel(true));
+            Throwable _cause = _ex.getCause();
+            if(_cause instanceof Exception)
+            {
+                throw (Exception)_cause;
+            }
+            throw _ex;
+        }
+    }
+}
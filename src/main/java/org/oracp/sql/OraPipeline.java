@@ -0,0 +1,175 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.LongConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies a stream to another with the reads and writes done in separate
+ * threads. A background thread fills buffers from the input while the calling
+ * thread drains them to the output so that the latency of one side is hidden
+ * behind the other. The buffers are allocated once and passed back and forth
+ * through a pair of bounded queues.
+ * @see OraFile#transfer
+ * @author Chad Juliano
+ */
+class OraPipeline
+{
+    private static final Logger              LOG = LoggerFactory.getLogger(OraPipeline.class);
+
+    private final ArrayBlockingQueue<Block>  _free;
+    private final ArrayBlockingQueue<Block>  _full;
+    private volatile IOException             _readError;
+
+    /**
+     * A reusable buffer. A negative length marks the end of the input.
+     */
+    private static class Block
+    {
+        private final byte[] _buf;
+        private int          _len;
+
+        private Block(int _size)
+        {
+            this._buf = new byte[_size];
+        }
+    }
+
+    /**
+     * Constructor
+     * @param _depth Number of buffers in the pipeline.
+     * @param _blockSize Size of each buffer.
+     */
+    OraPipeline(int _depth, int _blockSize)
+    {
+        this._free = new ArrayBlockingQueue<>(_depth);
+        // leave room for the end marker
+        this._full = new ArrayBlockingQueue<>(_depth + 1);
+
+        for(int _idx = 0; _idx < _depth; _idx++)
+        {
+            this._free.add(new Block(_blockSize));
+        }
+    }
+
+    /**
+     * Copy the input to the output until the end of the input is reached.
+     * @param _is Source data stream
+     * @param _os Destination for data
+     * @param _listener Called with the total bytes written after each buffer.
+     * @return Total bytes copied.
+     * @throws IOException
+     */
+    long run(InputStream _is, OutputStream _os, LongConsumer _listener)
+            throws IOException
+    {
+        Thread _reader = new Thread(() -> readLoop(_is), "oracp-reader");
+        _reader.setDaemon(true);
+        _reader.start();
+
+        long _numTotal = 0;
+        boolean _complete = false;
+        try
+        {
+            while(true)
+            {
+                Block _block = this._full.take();
+                if(_block._len < 0)
+                {
+                    break;
+                }
+
+                _os.write(_block._buf, 0, _block._len);
+                _numTotal += _block._len;
+                this._free.put(_block);
+                _listener.accept(_numTotal);
+            }
+            _complete = true;
+        }
+        catch(InterruptedException _ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Transfer interrupted");
+        }
+        finally
+        {
+            if(!_complete)
+            {
+                // stop the reader if the write side failed
+                _reader.interrupt();
+            }
+            joinReader(_reader);
+        }
+
+        if(this._readError != null)
+        {
+            throw this._readError;
+        }
+        return _numTotal;
+    }
+
+    /**
+     * Fill free buffers from the input and queue them for writing.
+     */
+    private void readLoop(InputStream _is)
+    {
+        try
+        {
+            while(true)
+            {
+                Block _block = this._free.take();
+                _block._len = _is.read(_block._buf);
+                if(_block._len <= 0)
+                {
+                    _block._len = -1;
+                    this._full.put(_block);
+                    break;
+                }
+                this._full.put(_block);
+            }
+        }
+        catch(InterruptedException _ex)
+        {
+            LOG.debug("Reader interrupted");
+        }
+        catch(Exception _ex)
+        {
+            this._readError = (_ex instanceof IOException) ? (IOException)_ex
+                    : new IOException(_ex.getMessage(), _ex);
+
+            // the queue always has room for the end marker
+            Block _marker = new Block(0);
+            _marker._len = -1;
+            this._full.add(_marker);
+        }
+    }
+
+    private static void joinReader(Thread _reader)
+    {
+        try
+        {
+            _reader.join();
+        }
+        catch(InterruptedException _ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
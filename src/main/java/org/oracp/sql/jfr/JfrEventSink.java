@@ -0,0 +1,70 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql.jfr;
+
+import org.oracp.sql.OraEventSink;
+import org.oracp.sql.OraFile;
+
+/**
+ * Records the database calls and transfers as JFR events. The fields are only
+ * filled in when a recording is enabled for the event so that the cost is
+ * small when nothing is recording.
+ * @author Chad Juliano
+ */
+public class JfrEventSink implements OraEventSink
+{
+    @Override
+    public Object beginCall()
+    {
+        OraCallEvent _event = new OraCallEvent();
+        _event.begin();
+        return _event;
+    }
+
+    @Override
+    public void commitCall(Object _event, String _call, OraFile _file, long _offset, long _length)
+    {
+        OraCallEvent _callEvent = (OraCallEvent)_event;
+        _callEvent.end();
+        if(_callEvent.shouldCommit())
+        {
+            _callEvent.call = _call;
+            _callEvent.file = _file.toString();
+            _callEvent.offset = _offset;
+            _callEvent.length = _length;
+            _callEvent.commit();
+        }
+    }
+
+    @Override
+    public Object beginTransfer()
+    {
+        OraTransferEvent _event = new OraTransferEvent();
+        _event.begin();
+        return _event;
+    }
+
+    @Override
+    public void commitTransfer(Object _event, String _direction, OraFile _file, long _bytes, int _streams)
+    {
+        OraTransferEvent _transferEvent = (OraTransferEvent)_event;
+        _transferEvent.end();
+        if(_transferEvent.shouldCommit())
+        {
+            _transferEvent.direction = _direction;
+            _transferEvent.file = _file.toString();
+            _transferEvent.bytes = _bytes;
+            _transferEvent.streams = _streams;
+            _transferEvent.commit();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A UTL_FILE call made over JDBC.
+ * @author Chad Juliano
+ */
+@Name("org.oracp.Call")
+@Label("UTL_FILE Call")
+@Category({ "ORACP", "Database" })
+@Description("A call to a UTL_FILE procedure over the JDBC connection.")
+@StackTrace(false)
+class OraCallEvent extends Event
+{
+    @Label("Call")
+    @Description("Name of the UTL_FILE procedure.")
+    String call;
+
+    @Label("File")
+    String file;
+
+    @Label("Offset")
+    @DataAmount
+    long   offset;
+
+    @Label("Length")
+    @Description("Bytes moved by the call, or the length of the file for FGETATTR.")
+    @DataAmount
+    long   length;
+}
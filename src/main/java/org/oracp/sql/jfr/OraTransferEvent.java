@@ -0,0 +1,45 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.sql.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A completed file transfer.
+ * @author Chad Juliano
+ */
+@Name("org.oracp.Transfer")
+@Label("File Transfer")
+@Category({ "ORACP" })
+@Description("A file copied between the database and the local file system.")
+@StackTrace(false)
+class OraTransferEvent extends Event
+{
+    @Label("Direction")
+    String direction;
+
+    @Label("File")
+    String file;
+
+    @Label("Bytes")
+    @DataAmount
+    long   bytes;
+
+    @Label("Connections")
+    int    streams;
+}
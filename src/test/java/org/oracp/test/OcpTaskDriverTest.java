@@ -94,6 +94,20 @@ public class OcpTaskDriverTest
         execTest(_argList);
     }
 
+    @Test
+    public void t040_stat()
+            throws Exception
+    {
+        ArrayList<String> _argList = new ArrayList<>();
+        _argList.addAll(Arrays.asList("--url", _jdbcUrl));
+        _argList.addAll(Arrays.asList("--user", _jdbcUser));
+        _argList.addAll(Arrays.asList("--passwd", _jdbcPass));
+        _argList.addAll(Arrays.asList("--db-dir", _dbDir));
+        _argList.add("stat");
+        _argList.add("expdp_xref116_v4.dmp,missing.dmp");
+        execTest(_argList);
+    }
+
     private static void execTest(ArrayList<String> _argList)
             throws Exception
     {
@@ -0,0 +1,157 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.oracp.sql.OraAutoTuner;
+
+/**
+ * Feeds {@link OraAutoTuner} with a simulated link where the throughput grows
+ * with the slices up to 24 and with the streams up to 3.
+ */
+@SuppressWarnings("javadoc")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OraAutoTunerTest
+{
+    private static final long   WINDOW_MS   = 1000;
+    private static final long   MB          = 1024 * 1024;
+
+    private OraAutoTuner        _tuner;
+    private long                _bytes;
+    private long                _nowMs;
+
+    @Before
+    public void setUp()
+    {
+        this._tuner = new OraAutoTuner(8, 1, 4);
+        this._bytes = 0;
+        this._nowMs = 0;
+        this._tuner.start(this._nowMs);
+
+        // the first window is ignored.
+        window(0);
+    }
+
+    @Test
+    public void t010_window()
+    {
+        this._bytes += MB;
+        assertFalse(this._tuner.sample(this._bytes, this._nowMs + WINDOW_MS - 1));
+        assertTrue(this._tuner.sample(this._bytes, this._nowMs + WINDOW_MS));
+    }
+
+    @Test
+    public void t020_slices()
+    {
+        assertSettings(8, 1);
+        linkWindow();
+        assertSettings(16, 1);
+        linkWindow();
+        assertSettings(24, 1);
+        linkWindow();
+        assertSettings(32, 1);
+        assertFalse(this._tuner.isSettled());
+
+        // 32 slices are no faster so the tuner goes back to 24 and adds a stream.
+        linkWindow();
+        assertSettings(24, 2);
+    }
+
+    @Test
+    public void t030_streams()
+    {
+        tuneSlices();
+        assertSettings(24, 2);
+        linkWindow();
+        assertSettings(24, 3);
+        linkWindow();
+        assertSettings(24, 4);
+        assertFalse(this._tuner.isSettled());
+
+        // 4 streams are no faster so the tuner settles on 3.
+        linkWindow();
+        assertSettings(24, 3);
+        assertTrue(this._tuner.isSettled());
+
+        // steady throughput keeps the settings.
+        linkWindow();
+        assertSettings(24, 3);
+        assertTrue(this._tuner.isSettled());
+    }
+
+    @Test
+    public void t040_drop()
+    {
+        tuneSlices();
+        linkWindow();
+        linkWindow();
+        linkWindow();
+        assertTrue(this._tuner.isSettled());
+
+        // a sharp drop halves the streams and probes them again.
+        window(10 * MB);
+        assertSettings(24, 1);
+        assertFalse(this._tuner.isSettled());
+
+        linkWindow();
+        assertSettings(24, 2);
+    }
+
+    @Test
+    public void t050_maxStreams()
+    {
+        OraAutoTuner _tuner = new OraAutoTuner(100, 10, 4);
+        assertEquals(64, _tuner.getSlices());
+        assertEquals(4, _tuner.getStreams());
+        assertEquals(4, _tuner.getMaxStreams());
+    }
+
+    /**
+     * Run the windows of the slices phase.
+     */
+    private void tuneSlices()
+    {
+        for(int _idx = 0; _idx < 4; _idx++)
+        {
+            linkWindow();
+        }
+    }
+
+    /**
+     * One window at the rate of the simulated link for the current settings.
+     */
+    private void linkWindow()
+    {
+        long _rate = Math.min(this._tuner.getSlices(), 24) * Math.min(this._tuner.getStreams(), 3) * MB;
+        window(_rate);
+    }
+
+    private void window(long _rate)
+    {
+        this._bytes += _rate;
+        this._nowMs += WINDOW_MS;
+        assertTrue(this._tuner.sample(this._bytes, this._nowMs));
+    }
+
+    private void assertSettings(int _slices, int _streams)
+    {
+        assertEquals("slices", _slices, this._tuner.getSlices());
+        assertEquals("streams", _streams, this._tuner.getStreams());
+    }
+}
@@ -0,0 +1,219 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.oracp.sql.OraDeltaTransfer;
+import org.oracp.sql.OraFile;
+
+/**
+ * Delta transfers between a local file and the virtual file of
+ * {@link OraFakeBackend}, which answers the DBMS_CRYPTO.HASH calls with the
+ * MD5 hashes of its blocks.
+ */
+@SuppressWarnings("javadoc")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OraDeltaTransferTest
+{
+    private static final int    BLOCK_SIZE = 64 * 1024;
+    private static final long   FILE_SIZE  = (16 * BLOCK_SIZE) + 12345;
+    private static final String DB_DIR     = "APP_DUMP_DIR";
+
+    private File                _localFile;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        this._localFile = File.createTempFile("oracp-delta", ".dmp");
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        Files.deleteIfExists(this._localFile.toPath());
+        Files.deleteIfExists(new File(this._localFile.getPath() + ".oracp-tmp").toPath());
+    }
+
+    @Test
+    public void t010_getGrown()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        writeLocal(FILE_SIZE - (3 * BLOCK_SIZE));
+
+        long _numRead = get(_backend);
+        assertArrayEquals(expected(_backend, FILE_SIZE), readLocal());
+
+        // the partial last block of the old file and everything after it
+        assertEquals(FILE_SIZE - (13 * BLOCK_SIZE), _numRead);
+    }
+
+    @Test
+    public void t020_getChanged()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        _backend.setChangedByte((5 * BLOCK_SIZE) + 100);
+        writeLocal(FILE_SIZE);
+
+        long _numRead = get(_backend);
+        assertArrayEquals(expected(_backend, FILE_SIZE), readLocal());
+        assertEquals(BLOCK_SIZE, _numRead);
+    }
+
+    @Test
+    public void t030_getShrunk()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        writeLocal(FILE_SIZE + (2 * BLOCK_SIZE) + 7);
+
+        long _numRead = get(_backend);
+        assertArrayEquals(expected(_backend, FILE_SIZE), readLocal());
+        assertEquals(0, _numRead);
+    }
+
+    @Test
+    public void t040_getChangedDuringTransfer()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        long _oldSize = 2 * BLOCK_SIZE;
+        writeLocal(_oldSize);
+
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "delta.dmp");
+        try
+        {
+            // the file changes after its hashes were read.
+            new OraDeltaTransfer(BLOCK_SIZE).getContents(_oraFile, this._localFile,
+                    (_partBytes, _totalBytes) -> _backend.setChangedByte(FILE_SIZE - 1));
+            fail("The changed file was not detected");
+        }
+        catch(IOException _ex)
+        {
+            assertTrue(_ex.getMessage(), _ex.getMessage().contains("do not match"));
+        }
+
+        // the old local file is kept and the temporary file is removed.
+        _backend.setChangedByte(-1);
+        assertArrayEquals(expected(_backend, _oldSize), readLocal());
+        assertFalse(new File(this._localFile.getPath() + ".oracp-tmp").exists());
+    }
+
+    @Test
+    public void t110_putGrown()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE - (3 * BLOCK_SIZE));
+        writeLocal(FILE_SIZE);
+
+        put(_backend);
+        assertEquals("ab", _backend.getLastOpenMode());
+        assertEquals(FILE_SIZE, _backend.getWriteLength());
+        assertEquals(3 * BLOCK_SIZE, _backend.getSentLength());
+    }
+
+    @Test
+    public void t120_putChanged()
+            throws Exception
+    {
+        // the remote file has the changed byte and the local file has the pattern.
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        _backend.setChangedByte((5 * BLOCK_SIZE) + 100);
+        writeLocal(FILE_SIZE);
+
+        put(_backend);
+        assertEquals("wb", _backend.getLastOpenMode());
+        assertEquals(FILE_SIZE, _backend.getWriteLength());
+        assertEquals(BLOCK_SIZE, _backend.getSentLength());
+    }
+
+    @Test
+    public void t130_putShrunk()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        long _newSize = FILE_SIZE - (2 * BLOCK_SIZE) - 7;
+        writeLocal(_newSize);
+
+        put(_backend);
+        assertEquals("wb", _backend.getLastOpenMode());
+        assertEquals(_newSize, _backend.getWriteLength());
+
+        // only the partial last block is sent.
+        assertEquals(_newSize % BLOCK_SIZE, _backend.getSentLength());
+    }
+
+    /**
+     * Run a delta GET into the local file.
+     * @return Number of bytes read from the virtual file.
+     */
+    private long get(OraFakeBackend _backend)
+            throws Exception
+    {
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "delta.dmp");
+        long[] _lastProgress = new long[1];
+        new OraDeltaTransfer(BLOCK_SIZE).getContents(_oraFile, this._localFile,
+                (_partBytes, _totalBytes) -> _lastProgress[0] = _partBytes);
+        return _lastProgress[0];
+    }
+
+    private void put(OraFakeBackend _backend)
+            throws Exception
+    {
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "delta.dmp");
+        new OraDeltaTransfer(BLOCK_SIZE).putContents(this._localFile, _oraFile, null);
+    }
+
+    /**
+     * Write the pattern of the virtual file to the local file.
+     */
+    private void writeLocal(long _size)
+            throws IOException
+    {
+        byte[] _data = new byte[(int)_size];
+        OraFakeBackend.fillPattern(0, _data, 0, _data.length);
+        Files.write(this._localFile.toPath(), _data);
+    }
+
+    private byte[] readLocal()
+            throws IOException
+    {
+        return Files.readAllBytes(this._localFile.toPath());
+    }
+
+    private static byte[] expected(OraFakeBackend _backend, long _size)
+    {
+        byte[] _data = new byte[(int)_size];
+        for(int _pos = 0; _pos < _data.length; _pos++)
+        {
+            _data[_pos] = _backend.byteAt(_pos);
+        }
+        return _data;
+    }
+}
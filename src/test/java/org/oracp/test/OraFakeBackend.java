@@ -0,0 +1,559 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import oracle.jdbc.OracleCallableStatement;
+import oracle.jdbc.OracleConnection;
+
+/**
+ * A JDBC connection that answers the UTL_FILE calls made by OraFile without a
+ * database. It serves a single virtual file whose content is a repeating
+ * pattern so that transfers of any size can be checked without storing the
+ * data. The statements are dispatched on the text of the PL/SQL block.
+ * UTL_COMPRESS is answered with gzip from java.util.zip.
+ * <p>
+ * Each call can be delayed by a fixed latency and by the time needed to move
+ * its RAW data at a given bandwidth so that the effect of round trips can be
+ * measured in process.
+ * @author Chad Juliano
+ */
+@SuppressWarnings("javadoc")
+public class OraFakeBackend
+{
+    // content of byte N of the virtual file is (N % PATTERN_MOD).
+    static final int             PATTERN_MOD = 251;
+    private static final byte[]  PATTERN     = new byte[PATTERN_MOD + 32767];
+
+    static
+    {
+        for(int _idx = 0; _idx < PATTERN.length; _idx++)
+        {
+            PATTERN[_idx] = patternAt(_idx);
+        }
+    }
+
+    private final long           _readLength;
+    private long                 _readPos    = 0;
+    private long                 _writeLength = 0;
+    private boolean              _exists     = true;
+    private String               _lastOpenMode;
+    private long                 _latencyNanos = 0;
+    private long                 _bytesPerSec  = 0;
+    private long                 _changedPos   = -1;
+    private long                 _sentLength   = 0;
+
+    /**
+     * Constructor
+     * @param _readLength Length of the file returned by FGETATTR.
+     */
+    public OraFakeBackend(long _readLength)
+    {
+        this._readLength = _readLength;
+    }
+
+    /**
+     * The expected byte at a position of the virtual file.
+     */
+    public static byte patternAt(long _pos)
+    {
+        return (byte)(_pos % PATTERN_MOD);
+    }
+
+    /**
+     * Fill a buffer with the content of the virtual file at a position.
+     */
+    public static void fillPattern(long _pos, byte[] _buf, int _offset, int _length)
+    {
+        int _done = 0;
+        while(_done < _length)
+        {
+            int _len = Math.min(_length - _done, PATTERN.length - PATTERN_MOD);
+            System.arraycopy(PATTERN, (int)((_pos + _done) % PATTERN_MOD), _buf, _offset + _done, _len);
+            _done += _len;
+        }
+    }
+
+    /**
+     * Number of bytes received by PUT_RAW since the file was last opened for
+     * write.
+     */
+    public long getWriteLength()
+    {
+        return this._writeLength;
+    }
+
+    /**
+     * Number of bytes received by PUT_RAW since the backend was created. Unlike
+     * {@link #getWriteLength} this does not count data copied inside the
+     * database.
+     */
+    public long getSentLength()
+    {
+        return this._sentLength;
+    }
+
+    /**
+     * Make the virtual file differ from the pattern at one position. It can be
+     * changed while a transfer is running.
+     * @param _pos Position of the changed byte or -1 for none.
+     */
+    public void setChangedByte(long _pos)
+    {
+        this._changedPos = _pos;
+    }
+
+    /**
+     * The byte of the virtual file at a position, including the changed byte.
+     */
+    public byte byteAt(long _pos)
+    {
+        return (_pos == this._changedPos) ? (byte)~patternAt(_pos) : patternAt(_pos);
+    }
+
+    public String getLastOpenMode()
+    {
+        return this._lastOpenMode;
+    }
+
+    public void setExists(boolean _exists)
+    {
+        this._exists = _exists;
+    }
+
+    /**
+     * Delay added to every call to simulate the network round trip.
+     * @param _micros
+     */
+    public void setLatency(long _micros)
+    {
+        this._latencyNanos = TimeUnit.MICROSECONDS.toNanos(_micros);
+    }
+
+    /**
+     * Rate at which the RAW data of each call is moved or 0 for no limit.
+     * @param _bytesPerSec
+     */
+    public void setBandwidth(long _bytesPerSec)
+    {
+        this._bytesPerSec = _bytesPerSec;
+    }
+
+    /**
+     * Wait for the simulated network time of a call that moved the given
+     * number of bytes.
+     */
+    private void simulateNetwork(long _numBytes)
+    {
+        long _nanos = this._latencyNanos;
+        if(this._bytesPerSec > 0)
+        {
+            _nanos += (_numBytes * 1000000000L) / this._bytesPerSec;
+        }
+
+        long _deadline = System.nanoTime() + _nanos;
+        while(_nanos > 0)
+        {
+            LockSupport.parkNanos(_nanos);
+            _nanos = _deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Create a new connection to the backend.
+     */
+    public OracleConnection getConnection()
+    {
+        return (OracleConnection)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { OracleConnection.class }, new ConnectionHandler());
+    }
+
+    private class ConnectionHandler implements InvocationHandler
+    {
+        private boolean _closed = false;
+
+        @Override
+        public Object invoke(Object _proxy, Method _method, Object[] _args)
+                throws Throwable
+        {
+            switch(_method.getName())
+            {
+                case "prepareCall":
+                case "prepareStatement":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(),
+                            new Class<?>[] { OracleCallableStatement.class },
+                            new StatementHandler((String)_args[0]));
+                case "close":
+                    this._closed = true;
+                    return null;
+                case "isClosed":
+                    return this._closed;
+                case "hashCode":
+                    return System.identityHashCode(_proxy);
+                case "equals":
+                    return _proxy == _args[0];
+                case "toString":
+                    return "OraFakeBackend.Connection";
+                default:
+                    return defaultValue(_method.getReturnType());
+            }
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler
+    {
+        private final String               _sql;
+        private final Map<Integer, Object> _binds = new HashMap<>();
+        private final Map<Integer, Object> _outs  = new HashMap<>();
+
+        private StatementHandler(String _sql)
+        {
+            this._sql = _sql;
+        }
+
+        @Override
+        public Object invoke(Object _proxy, Method _method, Object[] _args)
+                throws Throwable
+        {
+            String _name = _method.getName();
+            switch(_name)
+            {
+                case "setInt":
+                case "setLong":
+                case "setString":
+                case "setBinaryStream":
+                case "setBytes":
+                    this._binds.put((Integer)_args[0], _args[1]);
+                    return null;
+                case "setNull":
+                    this._binds.put((Integer)_args[0], null);
+                    return null;
+                case "execute":
+                    execute();
+                    return false;
+                case "getInt":
+                    return getInt((Integer)_args[0]);
+                case "getLong":
+                    return ((Number)this._outs.get(_args[0])).longValue();
+                case "getBinaryStream":
+                    byte[] _data = (byte[])this._outs.get(_args[0]);
+                    return (_data == null) ? null : new ByteArrayInputStream(_data);
+                case "getBytes":
+                    return this._outs.get(_args[0]);
+                case "hashCode":
+                    return System.identityHashCode(_proxy);
+                case "equals":
+                    return _proxy == _args[0];
+                case "toString":
+                    return this._sql;
+                default:
+                    return defaultValue(_method.getReturnType());
+            }
+        }
+
+        private int getInt(int _idx)
+                throws SQLException
+        {
+            long _value = ((Number)this._outs.get(_idx)).longValue();
+            if(_value > Integer.MAX_VALUE || _value < Integer.MIN_VALUE)
+            {
+                // the driver rejects a NUMBER that does not fit.
+                throw new SQLException("Numeric Overflow: " + _value);
+            }
+            return (int)_value;
+        }
+
+        private void execute()
+                throws Exception
+        {
+            this._outs.clear();
+            long _numBytes = 0;
+
+            if(this._sql.contains("UTL_FILE.FGETATTR"))
+            {
+                this._outs.put(3, _exists ? _readLength : 0L);
+                this._outs.put(4, 32768);
+                this._outs.put(5, _exists ? 1 : 0);
+            }
+            else if(this._sql.contains("v_src := UTL_FILE.FOPEN") && this._sql.contains("FSEEK(v_src"))
+            {
+                // append of a range of the virtual file inside the database
+                _writeLength += ((Number)this._binds.get(2)).longValue();
+            }
+            else if(this._sql.contains("UTL_FILE.FOPEN"))
+            {
+                _lastOpenMode = (String)this._binds.get(3);
+                if(_lastOpenMode.startsWith("w"))
+                {
+                    _writeLength = 0;
+                }
+                else if(_lastOpenMode.startsWith("a"))
+                {
+                    // appended data follows the virtual file
+                    _writeLength = _readLength;
+                }
+                _readPos = 0;
+                this._outs.put(4, 1);
+                this._outs.put(5, 1);
+            }
+            else if(this._sql.contains("UTL_FILE.FSEEK"))
+            {
+                _readPos = ((Number)this._binds.get(1)).longValue();
+            }
+            else if(this._sql.contains("UTL_COMPRESS.LZ_COMPRESS"))
+            {
+                _numBytes += readCompressed((Integer)this._binds.get(3));
+            }
+            else if(this._sql.contains("UTL_COMPRESS.LZ_UNCOMPRESS"))
+            {
+                _numBytes += writeCompressed();
+            }
+            else if(this._sql.contains("get_chunk"))
+            {
+                int _chunkLen = (Integer)this._binds.get(3);
+                int _count = countBinds("get_chunk(?)");
+                for(int _idx = 0; _idx < _count; _idx++)
+                {
+                    byte[] _chunk = readChunk(_chunkLen);
+                    this._outs.put(4 + _idx, _chunk);
+                    _numBytes += (_chunk == null) ? 0 : _chunk.length;
+                }
+            }
+            else if(this._sql.contains("v_total"))
+            {
+                // copy inside the database of the virtual file
+                long _len = Math.min(((Number)this._binds.get(1)).longValue(), _readLength - _readPos);
+                _readPos += _len;
+                _writeLength += _len;
+                this._outs.put(6, _len);
+            }
+            else if(this._sql.contains("DBMS_CRYPTO.HASH"))
+            {
+                _numBytes += readHashes((Integer)this._binds.get(1), (Integer)this._binds.get(4));
+            }
+            else if(this._sql.contains("UTL_FILE.GET_RAW"))
+            {
+                byte[] _chunk = readChunk((Integer)this._binds.get(4));
+                if(_chunk == null)
+                {
+                    throw new SQLException("ORA-01403: no data found");
+                }
+                this._outs.put(3, _chunk);
+                _numBytes += _chunk.length;
+            }
+            else if(this._sql.contains("UTL_FILE.PUT_RAW"))
+            {
+                for(Map.Entry<Integer, Object> _entry : this._binds.entrySet())
+                {
+                    if(_entry.getValue() instanceof InputStream)
+                    {
+                        _numBytes += writeSlice((InputStream)_entry.getValue());
+                    }
+                }
+                // streams are consumed by each execute
+                this._binds.entrySet().removeIf(_entry -> _entry.getValue() instanceof InputStream);
+            }
+
+            simulateNetwork(_numBytes);
+        }
+
+        private int countBinds(String _token)
+        {
+            int _count = 0;
+            for(int _pos = this._sql.indexOf(_token); _pos >= 0; _pos = this._sql.indexOf(_token, _pos + 1))
+            {
+                _count++;
+            }
+            return _count;
+        }
+
+        /**
+         * Return the next chunk of the virtual file or null at the end.
+         */
+        private byte[] readChunk(int _chunkLen)
+        {
+            int _len = (int)Math.min(_chunkLen, _readLength - _readPos);
+            if(_len <= 0)
+            {
+                return null;
+            }
+            byte[] _chunk = new byte[_len];
+            fillPattern(_readPos, _chunk, 0, _len);
+            if(_changedPos >= _readPos && _changedPos < _readPos + _len)
+            {
+                _chunk[(int)(_changedPos - _readPos)] = byteAt(_changedPos);
+            }
+            _readPos += _len;
+            return _chunk;
+        }
+
+        /**
+         * Return the MD5 hashes of the next blocks of the virtual file packed
+         * into one RAW in the same way as DBMS_CRYPTO.HASH.
+         * @return Number of bytes returned.
+         */
+        private int readHashes(int _blockSize, int _count)
+                throws NoSuchAlgorithmException
+        {
+            MessageDigest _md5 = MessageDigest.getInstance("MD5");
+            ByteArrayOutputStream _packed = new ByteArrayOutputStream();
+            byte[] _block;
+            for(int _idx = 0; _idx < _count && (_block = readChunk(_blockSize)) != null; _idx++)
+            {
+                _packed.write(_md5.digest(_block), 0, 16);
+            }
+            this._outs.put(5, (_packed.size() > 0) ? _packed.toByteArray() : null);
+            return _packed.size();
+        }
+
+        /**
+         * Read a set of chunks and return them compressed with gzip, which is
+         * the format of UTL_COMPRESS, in 32 KB out parameters after the
+         * number of bytes read.
+         * @return Number of compressed bytes.
+         */
+        private int readCompressed(int _chunksPerCall)
+                throws IOException
+        {
+            ByteArrayOutputStream _zipOs = new ByteArrayOutputStream();
+            int _rawLen = 0;
+            try(OutputStream _os = new GZIPOutputStream(_zipOs))
+            {
+                byte[] _chunk;
+                for(int _idx = 0; _idx < _chunksPerCall && (_chunk = readChunk(32767)) != null; _idx++)
+                {
+                    _os.write(_chunk);
+                    _rawLen += _chunk.length;
+                }
+            }
+
+            this._outs.put(4, _rawLen);
+            byte[] _zip = (_rawLen > 0) ? _zipOs.toByteArray() : new byte[0];
+            for(int _pos = 0, _idx = 0; _pos < _zip.length; _pos += 32767, _idx++)
+            {
+                this._outs.put(5 + _idx, Arrays.copyOfRange(_zip, _pos, Math.min(_zip.length, _pos + 32767)));
+            }
+            return _zip.length;
+        }
+
+        /**
+         * Uncompress the slices bound after the file handle and consume the
+         * result in the same way as PUT_RAW.
+         * @return Number of compressed bytes.
+         */
+        private int writeCompressed()
+                throws IOException, SQLException
+        {
+            ByteArrayOutputStream _zipOs = new ByteArrayOutputStream();
+            for(int _idx = 3; this._binds.containsKey(_idx); _idx++)
+            {
+                InputStream _is = (InputStream)this._binds.get(_idx);
+                if(_is != null)
+                {
+                    byte[] _buf = new byte[32767];
+                    int _numRead;
+                    while((_numRead = _is.read(_buf)) > 0)
+                    {
+                        _zipOs.write(_buf, 0, _numRead);
+                    }
+                }
+            }
+            this._binds.entrySet().removeIf(_entry -> _entry.getValue() instanceof InputStream);
+
+            try(InputStream _is = new GZIPInputStream(new ByteArrayInputStream(_zipOs.toByteArray())))
+            {
+                while(writeSlice(_is) > 0)
+                {
+                    // consume the uncompressed data in 32 KB slices
+                }
+            }
+            return _zipOs.size();
+        }
+
+        /**
+         * Consume a slice written by PUT_RAW. Only the first and last byte are
+         * compared so that very large transfers stay fast.
+         * @return Number of bytes in the slice.
+         */
+        private int writeSlice(InputStream _is)
+                throws IOException, SQLException
+        {
+            byte[] _data = new byte[32767];
+            int _len = 0;
+            int _numRead;
+            while((_numRead = _is.read(_data, _len, _data.length - _len)) > 0)
+            {
+                _len += _numRead;
+            }
+
+            if(_len > 0 && (_data[0] != patternAt(_writeLength)
+                    || _data[_len - 1] != patternAt(_writeLength + _len - 1)))
+            {
+                throw new SQLException("Unexpected data at offset " + _writeLength);
+            }
+            _writeLength += _len;
+            _sentLength += _len;
+            return _len;
+        }
+    }
+
+    private static Object defaultValue(Class<?> _type)
+    {
+        if(_type == boolean.class)
+        {
+            return false;
+        }
+        else if(_type == int.class)
+        {
+            return 0;
+        }
+        else if(_type == long.class)
+        {
+            return 0L;
+        }
+        else if(_type == short.class)
+        {
+            return (short)0;
+        }
+        else if(_type == byte.class)
+        {
+            return (byte)0;
+        }
+        else if(_type == double.class)
+        {
+            return 0d;
+        }
+        else if(_type == float.class)
+        {
+            return 0f;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.oracp.sql.OraFileFilter;
+import org.oracp.sql.OraFileInfo;
+
+/**
+ * The LIKE pattern sent to oracp_list_dir and the checks made on the client.
+ */
+@SuppressWarnings("javadoc")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OraFileFilterTest
+{
+    private static final long AFTER  = 1000000L;
+    private static final long BEFORE = 2000000L;
+
+    @Test
+    public void t010_like()
+    {
+        assertNull(likePattern(null));
+        assertEquals("%.dmp", likePattern("*.dmp"));
+        assertEquals("expdp-___.dmp", likePattern("expdp-???.dmp"));
+        assertEquals("alert.log", likePattern("alert.log"));
+    }
+
+    @Test
+    public void t020_likeEscape()
+    {
+        // LIKE wildcards in the name are escaped with \
+        assertEquals("full\\_export%", likePattern("full_export*"));
+        assertEquals("100\\%.dmp", likePattern("100%.dmp"));
+    }
+
+    @Test
+    public void t030_likeClientOnly()
+    {
+        assertNull(likePattern("export[0-9].dmp"));
+        assertNull(likePattern("*.{dmp,log}"));
+        assertNull(likePattern("a\\*b"));
+    }
+
+    @Test
+    public void t040_matchName()
+    {
+        OraFileFilter _filter = new OraFileFilter();
+        assertTrue(_filter.matches(file("any.log", 0)));
+
+        _filter.setNamePattern("*.{dmp,log}");
+        assertTrue(_filter.matches(file("export.dmp", 0)));
+        assertTrue(_filter.matches(file("export.log", 0)));
+        assertFalse(_filter.matches(file("export.txt", 0)));
+    }
+
+    @Test
+    public void t050_matchTime()
+    {
+        OraFileFilter _filter = new OraFileFilter();
+        _filter.setModifiedAfter(AFTER);
+        _filter.setModifiedBefore(BEFORE);
+        assertTrue(_filter.hasTimeRange());
+
+        // after is inclusive and before is exclusive.
+        assertFalse(_filter.matches(file("a.dmp", AFTER - 1)));
+        assertTrue(_filter.matches(file("a.dmp", AFTER)));
+        assertTrue(_filter.matches(file("a.dmp", BEFORE - 1)));
+        assertFalse(_filter.matches(file("a.dmp", BEFORE)));
+    }
+
+    @Test
+    public void t060_matchUnknownTime()
+    {
+        OraFileFilter _filter = new OraFileFilter();
+        assertFalse(_filter.hasTimeRange());
+        assertTrue(_filter.matches(file("a.dmp", 0)));
+
+        _filter.setModifiedAfter(AFTER);
+        assertFalse(_filter.matches(file("a.dmp", 0)));
+
+        _filter = new OraFileFilter();
+        _filter.setModifiedBefore(BEFORE);
+        assertFalse(_filter.matches(file("a.dmp", 0)));
+    }
+
+    private static String likePattern(String _glob)
+    {
+        OraFileFilter _filter = new OraFileFilter();
+        _filter.setNamePattern(_glob);
+        return _filter.getLikePattern();
+    }
+
+    private static OraFileInfo file(String _fileName, long _lastModified)
+    {
+        return new OraFileInfo(_fileName, 100, _lastModified);
+    }
+}
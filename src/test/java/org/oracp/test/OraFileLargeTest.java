@@ -0,0 +1,323 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.oracp.sql.OraFile;
+import org.oracp.sql.OraFileChannel;
+
+/**
+ * Transfers of files larger than 4 GB through {@link OraFakeBackend} so that
+ * sizes and offsets that do not fit in an int are exercised without a
+ * database.
+ */
+@SuppressWarnings("javadoc")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OraFileLargeTest
+{
+    // past 4 GB and not a multiple of the chunk size.
+    private static final long FILE_SIZE = (4L * 1024 * 1024 * 1024) + 12345;
+
+    private static final String DB_DIR  = "APP_DUMP_DIR";
+
+    @Test
+    public void t001_length()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+        assertEquals(FILE_SIZE, _oraFile.length());
+    }
+
+    @Test
+    public void t010_get()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        PatternOutputStream _os = new PatternOutputStream(0);
+        long[] _lastProgress = new long[2];
+        _oraFile.getContents(_os, (_partBytes, _totalBytes) ->
+        {
+            _lastProgress[0] = _partBytes;
+            _lastProgress[1] = _totalBytes;
+        });
+
+        assertEquals(FILE_SIZE, _os._pos);
+        assertEquals(FILE_SIZE, _lastProgress[0]);
+        assertEquals(FILE_SIZE, _lastProgress[1]);
+    }
+
+    @Test
+    public void t020_getOffset()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        long _offset = FILE_SIZE - (3 * 1024 * 1024);
+        PatternOutputStream _os = new PatternOutputStream(_offset);
+        _oraFile.getContents(_os, _offset, null);
+        assertEquals(FILE_SIZE, _os._pos);
+    }
+
+    @Test
+    public void t030_put()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(0);
+        _backend.setExists(false);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        long[] _lastProgress = new long[2];
+        _oraFile.putContents(new PatternInputStream(FILE_SIZE), (_partBytes, _totalBytes) ->
+        {
+            _lastProgress[0] = _partBytes;
+            _lastProgress[1] = _totalBytes;
+        });
+
+        assertEquals(FILE_SIZE, _backend.getWriteLength());
+        assertEquals(FILE_SIZE, _lastProgress[0]);
+
+        // the length of a generic stream is not known.
+        assertEquals(-1, _lastProgress[1]);
+    }
+
+    @Test
+    public void t040_channelRead()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        long _offset = FILE_SIZE - (3 * 1024 * 1024);
+        PatternOutputStream _os = new PatternOutputStream(_offset);
+        ByteBuffer _bb = ByteBuffer.allocateDirect(100000);
+        byte[] _buf = new byte[_bb.capacity()];
+        try(OraFileChannel _channel = _oraFile.openReadChannel())
+        {
+            _channel.position(_offset);
+            while(_channel.read(_bb) >= 0)
+            {
+                _bb.flip();
+                int _len = _bb.remaining();
+                _bb.get(_buf, 0, _len);
+                _os.write(_buf, 0, _len);
+                _bb.clear();
+            }
+            assertEquals(FILE_SIZE, _channel.position());
+        }
+        assertEquals(FILE_SIZE, _os._pos);
+    }
+
+    @Test
+    public void t050_channelWrite()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(0);
+        _backend.setExists(false);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        final long _size = (5 * 1024 * 1024) + 12345;
+        byte[] _buf = new byte[3 * 1024 * 1024];
+        try(OraFileChannel _channel = _oraFile.openWriteChannel(false))
+        {
+            // heap buffers that are large enough are sent in place and direct buffers are copied.
+            long _pos = 0;
+            while(_pos < _size)
+            {
+                int _len = (int)Math.min(_buf.length, _size - _pos);
+                OraFakeBackend.fillPattern(_pos, _buf, 0, _len);
+                ByteBuffer _bb = (_pos == 0) ? ByteBuffer.wrap(_buf, 0, _len)
+                        : (ByteBuffer)ByteBuffer.allocateDirect(_len).put(_buf, 0, _len).flip();
+                _pos += _channel.write(_bb);
+            }
+            assertEquals(_size, _channel.size());
+        }
+        assertEquals(_size, _backend.getWriteLength());
+    }
+
+    @Test
+    public void t060_getAsyncCancel()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        CountDownLatch _started = new CountDownLatch(1);
+        PatternOutputStream _os = new PatternOutputStream(0)
+        {
+            @Override
+            public void write(byte[] _buf, int _offset, int _length)
+                    throws IOException
+            {
+                super.write(_buf, _offset, _length);
+                _started.countDown();
+            }
+        };
+
+        ExecutorService _executor = Executors.newSingleThreadExecutor();
+        CompletableFuture<Void> _future = _oraFile.getContentsAsync(_os, null, _executor);
+        assertTrue(_started.await(10, TimeUnit.SECONDS));
+        assertTrue(_future.cancel(false));
+
+        // the worker stops at its next round trip.
+        _executor.shutdown();
+        assertTrue(_executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(_future.isCancelled());
+        assertTrue(_os._pos < FILE_SIZE);
+    }
+
+    @Test
+    public void t070_putAsync()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(0);
+        _backend.setExists(false);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        final long _size = (5 * 1024 * 1024) + 12345;
+        _oraFile.putContentsAsync(new PatternInputStream(_size), null).get(10, TimeUnit.SECONDS);
+        assertEquals(_size, _backend.getWriteLength());
+    }
+
+    @Test
+    public void t080_copy()
+            throws Exception
+    {
+        OraFakeBackend _backend = new OraFakeBackend(FILE_SIZE);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+
+        long[] _lastProgress = new long[2];
+        OraFile _dest = _oraFile.copy("ARCHIVE_DIR", "large.dmp", (_partBytes, _totalBytes) ->
+        {
+            _lastProgress[0] = _partBytes;
+            _lastProgress[1] = _totalBytes;
+        });
+
+        assertEquals("wb", _backend.getLastOpenMode());
+        assertEquals(FILE_SIZE, _backend.getWriteLength());
+        assertEquals(FILE_SIZE, _lastProgress[0]);
+        assertEquals(FILE_SIZE, _lastProgress[1]);
+        assertEquals("ARCHIVE_DIR", _dest.getDirectory());
+    }
+
+    @Test
+    public void t090_compress()
+            throws Exception
+    {
+        // smaller than the other tests because every piece goes through gzip.
+        final long _size = (5 * 1024 * 1024) + 12345;
+        OraFakeBackend _backend = new OraFakeBackend(_size);
+        OraFile _oraFile = new OraFile(_backend.getConnection(), DB_DIR, "large.dmp");
+        _oraFile.setCompress(true);
+
+        // LZ_COMPRESS in the database and gunzip in the client.
+        PatternOutputStream _os = new PatternOutputStream(0);
+        _oraFile.getContents(_os, null);
+        assertEquals(_size, _os._pos);
+
+        // gzip in the client and LZ_UNCOMPRESS in the database.
+        _oraFile.putContents(new PatternInputStream(_size), null);
+        assertEquals("wb", _backend.getLastOpenMode());
+        assertEquals(_size, _backend.getWriteLength());
+    }
+
+    /**
+     * Checks that the data written matches the pattern of the fake file.
+     */
+    private static class PatternOutputStream extends OutputStream
+    {
+        private long _pos;
+
+        private PatternOutputStream(long _pos)
+        {
+            this._pos = _pos;
+        }
+
+        @Override
+        public void write(int _byte)
+                throws IOException
+        {
+            write(new byte[] { (byte)_byte }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] _buf, int _offset, int _length)
+                throws IOException
+        {
+            if(_length > 0 && (_buf[_offset] != OraFakeBackend.patternAt(_pos)
+                    || _buf[_offset + _length - 1] != OraFakeBackend.patternAt(_pos + _length - 1)))
+            {
+                throw new IOException("Unexpected data at offset " + _pos);
+            }
+            _pos += _length;
+        }
+    }
+
+    /**
+     * Generates the pattern of the fake file. The length is reported with
+     * available() so it is capped at 2 GB in the same way as a FileInputStream.
+     */
+    private static class PatternInputStream extends InputStream
+    {
+        private final long _length;
+        private long       _pos = 0;
+
+        private PatternInputStream(long _length)
+        {
+            this._length = _length;
+        }
+
+        @Override
+        public int available()
+        {
+            return (int)Math.min(Integer.MAX_VALUE, _length - _pos);
+        }
+
+        @Override
+        public int read()
+                throws IOException
+        {
+            throw new IOException("Not implimented!");
+        }
+
+        @Override
+        public int read(byte[] _buf, int _offset, int _count)
+        {
+            int _len = (int)Math.min(_count, this._length - _pos);
+            if(_len <= 0)
+            {
+                return -1;
+            }
+            OraFakeBackend.fillPattern(_pos, _buf, _offset, _len);
+            _pos += _len;
+            return _len;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * ORACP - Database Copy utility
+ *
+ *  Copyright 2016 by Chad Juliano
+ *
+ *  Licensed under GNU Lesser General Public License v3.0 only.
+ *  Some rights reserved. See LICENSE.
+ *
+ * @license LGPL-3.0 <http://spdx.org/licenses/LGPL-3.0>
+ */
+
+package org.oracp.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+import org.oracp.nio.OraFileSystemProvider;
+
+/**
+ * Files API calls on oracp URIs through {@link OraFakeBackend}.
+ */
+@SuppressWarnings("javadoc")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class OraFileSystemTest
+{
+    private static final long   FILE_SIZE = (3 * 1024 * 1024) + 12345;
+    private static final URI    FS_URI    = URI.create("oracp://test/");
+
+    private OraFakeBackend      _backend;
+    private FileSystem          _fs;
+
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        this._backend = new OraFakeBackend(FILE_SIZE);
+        DataSource _ds = (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class },
+                (_proxy, _method, _args) -> "getConnection".equals(_method.getName())
+                        ? this._backend.getConnection() : null);
+
+        Map<String, Object> _env = new HashMap<>();
+        _env.put(OraFileSystemProvider.ENV_DATA_SOURCE, _ds);
+        _env.put(OraFileSystemProvider.ENV_CACHE_TTL_MS, 0);
+        this._fs = FileSystems.newFileSystem(FS_URI, _env);
+    }
+
+    @After
+    public void tearDown()
+            throws Exception
+    {
+        this._fs.close();
+    }
+
+    @Test
+    public void t001_uri()
+    {
+        Path _path = Paths.get(URI.create("oracp://test/APP_DUMP_DIR/export.dmp"));
+        assertEquals("/APP_DUMP_DIR/export.dmp", _path.toString());
+        assertEquals("export.dmp", _path.getFileName().toString());
+        assertEquals(URI.create("oracp://test/APP_DUMP_DIR/export.dmp"), _path.toUri());
+    }
+
+    @Test
+    public void t010_size()
+            throws Exception
+    {
+        Path _path = this._fs.getPath("/APP_DUMP_DIR", "export.dmp");
+        assertTrue(Files.exists(_path));
+        assertTrue(Files.isRegularFile(_path));
+        assertEquals(FILE_SIZE, Files.size(_path));
+
+        this._backend.setExists(false);
+        assertFalse(Files.exists(_path));
+    }
+
+    @Test
+    public void t020_read()
+            throws Exception
+    {
+        Path _path = this._fs.getPath("/APP_DUMP_DIR/export.dmp");
+        long _pos = 0;
+        try(SeekableByteChannel _channel = Files.newByteChannel(_path))
+        {
+            ByteBuffer _bb = ByteBuffer.allocateDirect(100000);
+            while(_channel.read(_bb) >= 0)
+            {
+                _bb.flip();
+                while(_bb.hasRemaining())
+                {
+                    assertEquals(OraFakeBackend.patternAt(_pos++), _bb.get());
+                }
+                _bb.clear();
+            }
+        }
+        assertEquals(FILE_SIZE, _pos);
+    }
+
+    @Test
+    public void t030_write()
+            throws Exception
+    {
+        this._backend.setExists(false);
+        Path _path = this._fs.getPath("/APP_DUMP_DIR/import.dmp");
+        assertEquals(FILE_SIZE, Files.copy(new PatternInputStream(FILE_SIZE), _path));
+        assertEquals("wb", this._backend.getLastOpenMode());
+        assertEquals(FILE_SIZE, this._backend.getWriteLength());
+    }
+
+    @Test
+    public void t040_copy()
+            throws Exception
+    {
+        // the fake file exists under every name so the destination is replaced.
+        Path _source = this._fs.getPath("/APP_DUMP_DIR/export.dmp");
+        Path _target = this._fs.getPath("/ARCHIVE_DIR/export.dmp");
+        Files.copy(_source, _target, StandardCopyOption.REPLACE_EXISTING);
+        assertEquals(FILE_SIZE, this._backend.getWriteLength());
+    }
+
+    /**
+     * Produces the content of the virtual file.
+     */
+    private static class PatternInputStream extends InputStream
+    {
+        private final long _length;
+        private long       _pos = 0;
+
+        private PatternInputStream(long _length)
+        {
+            this._length = _length;
+        }
+
+        @Override
+        public int read()
+        {
+            return (this._pos < this._length) ? (OraFakeBackend.patternAt(this._pos++) & 0xff) : -1;
+        }
+
+        @Override
+        public int read(byte[] _buf, int _offset, int _len)
+        {
+            int _numRead = (int)Math.min(_len, this._length - this._pos);
+            if(_numRead <= 0)
+            {
+                return -1;
+            }
+            OraFakeBackend.fillPattern(this._pos, _buf, _offset, _numRead);
+            this._pos += _numRead;
+            return _numRead;
+        }
+    }
+}